@@ -0,0 +1,82 @@
+package com.springboot.webflux.deathnote.benchmark;
+
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.services.DeathSchedulerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transición completa del scheduler para muertes ya vencidas: armar el temporizador, dispararlo,
+ * agrupar en lotes y aplicar markDead. Cada invocación transiciona {@link #PEOPLE} personas y espera
+ * a que el scheduler las haya escrito todas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DeathSchedulerBenchmark {
+
+    static final int PEOPLE = 10_000;
+
+    @Param({"100", "500"})
+    public int batchSize;
+
+    private ServiceWiring wiring;
+    private final List<Person> people = new ArrayList<>(PEOPLE);
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        wiring = new ServiceWiring(batchSize);
+        people.clear();
+        for (int i = 0; i < PEOPLE; i++) {
+            Person person = new Person("Pendiente " + i, null, null, null, "bench-note");
+            person.setId(Integer.toHexString(0x20000000 + i));
+            people.add(person);
+            wiring.personStore.people.put(person.getId(), person);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void makeAllDue() {
+        LocalDateTime due = LocalDateTime.now().minusSeconds(1);
+        for (Person person : people) {
+            person.setAlive(true);
+            person.setStatus(DeathSchedulerService.PENDING_HEART_ATTACK);
+            person.setScheduledDeathTime(due);
+            person.setDeathDate(null);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        wiring.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PEOPLE)
+    public long transitions() {
+        DeathSchedulerService scheduler = wiring.deathSchedulerService;
+        long target = scheduler.getAppliedTransitions() + PEOPLE;
+        for (Person person : people) {
+            scheduler.schedule(person);
+        }
+        while (scheduler.getAppliedTransitions() < target) {
+            LockSupport.parkNanos(10_000);
+        }
+        return target;
+    }
+}
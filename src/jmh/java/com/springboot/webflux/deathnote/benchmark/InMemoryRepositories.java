@@ -0,0 +1,125 @@
+package com.springboot.webflux.deathnote.benchmark;
+
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.PendingDeath;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Repositorios en memoria para los benchmarks: proxies que implementan solo los métodos que usan
+ * los servicios medidos sobre un ConcurrentHashMap, sin Mongo ni contexto de Spring. Cualquier otro
+ * método lanza UnsupportedOperationException para que un cambio en los servicios no se mida en falso.
+ */
+final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    static final class PersonStore {
+
+        final Map<String, Person> people = new ConcurrentHashMap<>();
+
+        PersonRepository repository() {
+            return proxy(PersonRepository.class, Map.of(
+                    "save", args -> Mono.just(put((Person) args[0])),
+                    "insert", args -> args[0] instanceof Iterable<?> batch
+                            ? Flux.fromIterable(batch).map(person -> put((Person) person))
+                            : Mono.just(put((Person) args[0])),
+                    "findById", args -> Mono.justOrEmpty(people.get((String) args[0])),
+                    "markDead", args -> Mono.fromSupplier(() -> markDead(castList(args[0])))));
+        }
+
+        private Person put(Person person) {
+            if (person.getId() == null) {
+                person.setId(new ObjectId().toHexString());
+            }
+            people.put(person.getId(), person);
+            return person;
+        }
+
+        // Misma condición que la actualización bulk de PersonRepositoryCustomImpl#markDead
+        private int markDead(List<PendingDeath> batch) {
+            int modified = 0;
+            for (PendingDeath pending : batch) {
+                Person person = people.get(pending.getId());
+                if (person != null && person.isAlive()
+                        && Objects.equals(person.getStatus(), pending.getStatus())
+                        && Objects.equals(person.getScheduledDeathTime(), pending.getScheduledDeathTime())) {
+                    person.setAlive(false);
+                    person.setDeathDate(pending.getScheduledDeathTime());
+                    person.setStatus(pending.getDeadStatus());
+                    person.setScheduledDeathTime(null);
+                    if (pending.getCauseOfDeath() != null) {
+                        person.setCauseOfDeath(pending.getCauseOfDeath());
+                    }
+                    modified++;
+                }
+            }
+            return modified;
+        }
+    }
+
+    static final class DeathNoteStore {
+
+        final Map<String, DeathNote> deathNotes = new ConcurrentHashMap<>();
+
+        DeathNoteRepository repository() {
+            return proxy(DeathNoteRepository.class, Map.of(
+                    "save", args -> Mono.just(put((DeathNote) args[0])),
+                    "findById", args -> Mono.justOrEmpty(deathNotes.get((String) args[0])),
+                    "findAll", args -> Flux.fromIterable(deathNotes.values()),
+                    "addPerson", args -> Mono.justOrEmpty(deathNotes.computeIfPresent((String) args[0], (id, deathNote) -> {
+                        if (!Objects.equals(deathNote.getOwnerId(), args[1])) {
+                            deathNote.setPersonCount(deathNote.getPersonCount() + 1);
+                        }
+                        return deathNote;
+                    })),
+                    "incrementPersonCount", args -> Mono.fromRunnable(() -> deathNotes.computeIfPresent((String) args[0], (id, deathNote) -> {
+                        deathNote.setPersonCount(deathNote.getPersonCount() + (Long) args[1]);
+                        return deathNote;
+                    }))));
+        }
+
+        DeathNote put(DeathNote deathNote) {
+            if (deathNote.getId() == null) {
+                deathNote.setId(new ObjectId().toHexString());
+            }
+            deathNotes.put(deathNote.getId(), deathNote);
+            return deathNote;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> castList(Object value) {
+        return (List<T>) value;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> "InMemory" + type.getSimpleName();
+                };
+            }
+            Function<Object[], Object> implementation = methods.get(method.getName());
+            if (implementation == null) {
+                throw new UnsupportedOperationException(method.getName() + " no está disponible en el repositorio en memoria");
+            }
+            return implementation.apply(args);
+        });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,69 @@
+package com.springboot.webflux.deathnote.benchmark;
+
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rutas de escritura de los servicios: alta inicial, especificar muerte y escribir en la Death Note.
+ * Las altas reutilizan 1024 ids para que el mapa y los temporizadores no crezcan durante la medida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ServiceBenchmarks {
+
+    private static final int IDS = 1024;
+
+    private ServiceWiring wiring;
+    private String deathNoteId;
+    private String personId;
+    private String[] ids;
+    private int next;
+    private LocalDateTime future;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        wiring = new ServiceWiring(500);
+        deathNoteId = wiring.deathNoteStore.put(new DeathNote("ryuk", null)).getId();
+        personId = wiring.personService.saveInitialEntry(new Person("Light Yagami", null, null, null, deathNoteId)).block().getId();
+        ids = new String[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = Integer.toHexString(0x10000000 + i);
+        }
+        future = LocalDateTime.now().plusDays(1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        wiring.close();
+    }
+
+    @Benchmark
+    public Person saveInitialEntry() {
+        Person person = new Person("Bench", null, null, null, deathNoteId);
+        person.setId(ids[next++ & (IDS - 1)]);
+        return wiring.personService.saveInitialEntry(person).block();
+    }
+
+    @Benchmark
+    public Person specifyDeath() {
+        return wiring.personService.specifyDeath(personId, future, "Detalles", null).block();
+    }
+
+    @Benchmark
+    public DeathNote writePersonInDeathNote() {
+        return wiring.deathNoteService.writePersonInDeathNote(deathNoteId, personId, "Detalles", future, null).block();
+    }
+}
@@ -0,0 +1,71 @@
+package com.springboot.webflux.deathnote.benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.services.CacheInvalidationBus;
+import com.springboot.webflux.deathnote.services.DeathNoteServiceImpl;
+import com.springboot.webflux.deathnote.services.DeathSchedulerService;
+import com.springboot.webflux.deathnote.services.PersonServiceImpl;
+import com.springboot.webflux.deathnote.services.ReactiveCache;
+import com.springboot.webflux.deathnote.services.SchedulerMembershipService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Monta a mano los servicios reales (con sus cachés, bus de invalidación local y métricas) sobre los
+ * repositorios en memoria, igual que los inyectaría Spring.
+ */
+final class ServiceWiring implements AutoCloseable {
+
+    final InMemoryRepositories.PersonStore personStore = new InMemoryRepositories.PersonStore();
+    final InMemoryRepositories.DeathNoteStore deathNoteStore = new InMemoryRepositories.DeathNoteStore();
+
+    final PersonServiceImpl personService = new PersonServiceImpl();
+    final DeathNoteServiceImpl deathNoteService = new DeathNoteServiceImpl();
+    final DeathSchedulerService deathSchedulerService = new DeathSchedulerService();
+
+    ServiceWiring(int schedulerBatchSize) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReactiveCache<String, Person> personCache = new ReactiveCache<>("people", Caffeine.newBuilder().maximumSize(10_000).buildAsync());
+        ReactiveCache<String, List<DeathNote>> deathNoteListCache = new ReactiveCache<>("death_notes", Caffeine.newBuilder().maximumSize(1).buildAsync());
+        SchedulerMembershipService membershipService = new SchedulerMembershipService("benchmark");
+
+        // Desactivado, el bus solo invalida la caché local
+        CacheInvalidationBus invalidationBus = new CacheInvalidationBus();
+        ReflectionTestUtils.setField(invalidationBus, "membershipService", membershipService);
+        ReflectionTestUtils.setField(invalidationBus, "personCache", personCache);
+        ReflectionTestUtils.setField(invalidationBus, "deathNoteListCache", deathNoteListCache);
+
+        ReflectionTestUtils.setField(deathSchedulerService, "personRepository", personStore.repository());
+        ReflectionTestUtils.setField(deathSchedulerService, "membershipService", membershipService);
+        ReflectionTestUtils.setField(deathSchedulerService, "personCache", personCache);
+        ReflectionTestUtils.setField(deathSchedulerService, "invalidationBus", invalidationBus);
+        ReflectionTestUtils.setField(deathSchedulerService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(deathSchedulerService, "batchSize", schedulerBatchSize);
+        ReflectionTestUtils.setField(deathSchedulerService, "flushInterval", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(deathSchedulerService, "writeRetries", 3);
+        ReflectionTestUtils.setField(deathSchedulerService, "writeRetryBackoff", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(deathSchedulerService, "rearmDelay", Duration.ofSeconds(5));
+        deathSchedulerService.startWriter();
+
+        ReflectionTestUtils.setField(deathNoteService, "deathNoteRepository", deathNoteStore.repository());
+        ReflectionTestUtils.setField(deathNoteService, "deathNoteListCache", deathNoteListCache);
+        ReflectionTestUtils.setField(deathNoteService, "personCache", personCache);
+        ReflectionTestUtils.setField(deathNoteService, "invalidationBus", invalidationBus);
+
+        ReflectionTestUtils.setField(personService, "personRepository", personStore.repository());
+        ReflectionTestUtils.setField(personService, "deathSchedulerService", deathSchedulerService);
+        ReflectionTestUtils.setField(personService, "deathNoteService", deathNoteService);
+        ReflectionTestUtils.setField(personService, "personCache", personCache);
+    }
+
+    @Override
+    public void close() {
+        deathSchedulerService.shutdown();
+    }
+}
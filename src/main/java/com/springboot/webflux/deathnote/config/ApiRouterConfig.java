@@ -0,0 +1,45 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.controller.PersonApiHandler;
+import com.springboot.webflux.deathnote.services.NotFoundException;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+
+import static com.springboot.webflux.deathnote.controller.PersonApiHandler.error;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+
+/**
+ * Rutas de la API JSON. Las rutas funcionales se evalúan antes que los {@code @Controller}, y lo
+ * que no coincide aquí (como {@code /api/test-upload}) sigue llegando a {@code PersonController}.
+ */
+@Configuration
+public class ApiRouterConfig {
+
+    @Bean
+    public RouterFunction<ServerResponse> personApiRoutes(PersonApiHandler handler) {
+        return RouterFunctions.route()
+                .path("/api", api -> api
+                        .GET("/persons", handler::listPersons)
+                        .GET("/persons/{id}", handler::getPerson)
+                        .POST("/persons", contentType(MediaType.APPLICATION_JSON), handler::createPerson)
+                        .POST("/persons/bulk", handler::importPeople)
+                        .PUT("/persons/{id}/death", contentType(MediaType.APPLICATION_JSON), handler::specifyDeath)
+                        .DELETE("/persons/{id}", handler::deletePerson)
+                        .GET("/deathnotes", handler::listDeathNotes)
+                        .POST("/deathnotes/{id}/reject", handler::rejectOwnership))
+                // Parámetros o JSON inválidos (incluidos los números mal formados)
+                .onError(ServerWebInputException.class, (e, request) -> error(HttpStatus.BAD_REQUEST, e.getReason()))
+                .onError(IllegalArgumentException.class, (e, request) -> error(HttpStatus.BAD_REQUEST, e.getMessage()))
+                // La persona o Death Note desapareció mientras se operaba
+                .onError(NotFoundException.class, (e, request) -> error(HttpStatus.NOT_FOUND, e.getMessage()))
+                // Reglas de negocio de los servicios (el propietario no puede escribirse, owner que no coincide...)
+                .onError(IllegalStateException.class, (e, request) -> error(HttpStatus.CONFLICT, e.getMessage()))
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.services.ReactiveCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cachés de lectura de los servicios, acotadas en tamaño y tiempo. Se desactivan con
+ * {@code deathnote.cache.enabled=false}; los aciertos y fallos se publican como métricas
+ * {@code cache.gets} de Micrometer con el nombre de cada caché.
+ */
+@Configuration
+public class CacheConfig {
+
+    private final boolean enabled;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public CacheConfig(@Value("${deathnote.cache.enabled:true}") boolean enabled, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public ReactiveCache<String, Person> personCache(@Value("${deathnote.cache.person.max-size:10000}") long maxSize,
+                                                     @Value("${deathnote.cache.person.ttl:PT30S}") Duration ttl) {
+        // Las lecturas modifican la persona antes de guardarla: cada una recibe una copia
+        return build("people", maxSize, ttl, Person::copy);
+    }
+
+    /**
+     * Lista completa de Death Notes bajo una única clave: la pantalla de selección siempre las pide todas.
+     */
+    @Bean
+    public ReactiveCache<String, List<DeathNote>> deathNoteListCache(@Value("${deathnote.cache.death-notes.ttl:PT10S}") Duration ttl) {
+        return build("death_notes", 1, ttl, UnaryOperator.identity());
+    }
+
+    private <K, V> ReactiveCache<K, V> build(String name, long maxSize, Duration ttl, UnaryOperator<V> copy) {
+        if (!enabled) {
+            return ReactiveCache.disabled(name);
+        }
+        AsyncCache<K, V> cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, name));
+        return new ReactiveCache<>(name, cache, copy);
+    }
+}
@@ -0,0 +1,61 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.services.CacheInvalidationBus;
+import com.springboot.webflux.deathnote.services.ReactiveCache;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Invalida las cachés con los eventos de guardado y borrado de Spring Data, de modo que cualquier
+ * escritura por repositorio o plantilla las mantiene al día. Las actualizaciones parciales
+ * (findAndModify, bulk) no emiten estos eventos y las invalida el servicio que las hace. Tras
+ * guardar o borrar, la invalidación se aplica en este nodo y se publica en el {@link CacheInvalidationBus}
+ * para las demás réplicas. No hace falta invalidar antes de guardar: la caché entrega copias, así que
+ * quien modifica una persona leída para guardarla no toca la instancia cacheada aunque el guardado falle.
+ */
+@Component
+public class CacheInvalidationListener extends AbstractMongoEventListener<Object> {
+
+    private final ReactiveCache<String, Person> personCache;
+    private final ReactiveCache<String, List<DeathNote>> deathNoteListCache;
+    private final CacheInvalidationBus invalidationBus;
+
+    public CacheInvalidationListener(ReactiveCache<String, Person> personCache,
+                                     ReactiveCache<String, List<DeathNote>> deathNoteListCache,
+                                     CacheInvalidationBus invalidationBus) {
+        this.personCache = personCache;
+        this.deathNoteListCache = deathNoteListCache;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        if (event.getSource() instanceof Person person) {
+            invalidationBus.invalidate(personCache, person.getId());
+        } else if (event.getSource() instanceof DeathNote) {
+            invalidationBus.invalidateAll(deathNoteListCache);
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        if (Person.class.equals(event.getType())) {
+            Document query = event.getSource();
+            Object id = query.get("_id");
+            if (id != null && !(id instanceof Document)) {
+                invalidationBus.invalidate(personCache, id.toString());
+            } else {
+                invalidationBus.invalidateAll(personCache);
+            }
+        } else if (DeathNote.class.equals(event.getType())) {
+            invalidationBus.invalidateAll(deathNoteListCache);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Migra las Death Notes que aún guardan el array personIds: asigna deathNoteId a las personas que no
+ * lo tengan, las marca como contadas (countedDeathNoteId), calcula personCount desde esas marcas y
+ * elimina el array. Es idempotente: una vez migrada, ninguna Death Note conserva personIds.
+ */
+@Component
+@Order(1)
+public class DeathNoteMembershipMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(DeathNoteMembershipMigration.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public DeathNoteMembershipMigration(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Query legacyNotes = Query.query(Criteria.where("personIds").exists(true));
+        legacyNotes.fields().include("_id", "personIds", "ownerId");
+        mongoTemplate.find(legacyNotes, Document.class, mongoTemplate.getCollectionName(DeathNote.class))
+                .concatMap(this::migrate)
+                .count()
+                .subscribe(
+                        count -> {
+                            if (count > 0) {
+                                log.info("Migradas {} Death Notes del array personIds a Person.deathNoteId.", count);
+                            }
+                        },
+                        error -> log.error("ERROR al migrar personIds de las Death Notes: {}", error.getMessage(), error)
+                );
+    }
+
+    private Mono<String> migrate(Document legacyNote) {
+        // Las Death Notes antiguas pueden tener _id ObjectId o String
+        Object rawId = legacyNote.get("_id");
+        String deathNoteId = rawId instanceof ObjectId objectId ? objectId.toHexString() : String.valueOf(rawId);
+        List<String> personIds = legacyNote.getList("personIds", String.class, List.of());
+        String ownerId = legacyNote.getString("ownerId");
+
+        Query orphans = Query.query(Criteria.where("_id").in(personIds).and("deathNoteId").is(null));
+        // Las que no estén contadas en otra Death Note, salvo el propietario; así addPerson y el borrado
+        // no las cuentan dos veces
+        Query uncountedMembers = Query.query(Criteria.where("deathNoteId").is(deathNoteId)
+                .and("countedDeathNoteId").exists(false)
+                .and("_id").ne(ownerId));
+        Query counted = Query.query(Criteria.where("countedDeathNoteId").is(deathNoteId));
+        Query note = Query.query(Criteria.where("_id").is(deathNoteId));
+
+        return mongoTemplate.updateMulti(orphans, Update.update("deathNoteId", deathNoteId), Person.class)
+                .then(mongoTemplate.updateMulti(uncountedMembers, Update.update("countedDeathNoteId", deathNoteId), Person.class))
+                .then(mongoTemplate.count(counted, Person.class))
+                .flatMap(count -> mongoTemplate.updateFirst(note,
+                        new Update().set("personCount", count).unset("personIds"), DeathNote.class))
+                .thenReturn(deathNoteId);
+    }
+}
@@ -0,0 +1,110 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.model.Person;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Crea al arrancar los índices declarados en las entidades (@Indexed, @CompoundIndex), borra los que
+ * ya no usa ninguna consulta y comprueba con explain que la reconstrucción del scheduler
+ * ({@code PersonRepository#findPendingDeaths}) se resuelve sobre el índice parcial 'pending_deaths'.
+ */
+@Component
+@Order(0)
+public class MongoIndexInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    // Índices de versiones anteriores que ya no lee nadie y solo encarecen las escrituras
+    private static final List<String> OBSOLETE_PERSON_INDEXES = List.of(
+            "status_alive_scheduledDeathTime",
+            // Sustituido por deathNoteId_entryTime_id, que sirve al listado paginado
+            "deathNoteId_entryTime");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Flux.fromIterable(mappingContext.getPersistentEntities())
+                .filter(entity -> entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class))
+                .concatMap(this::ensureIndexes)
+                .thenMany(dropObsoleteIndexes())
+                .then(checkSchedulerQueryPlan())
+                .subscribe(
+                        unused -> {},
+                        error -> log.error("ERROR al crear los índices de Mongo: {}", error.getMessage(), error)
+                );
+    }
+
+    private Flux<String> ensureIndexes(MongoPersistentEntity<?> entity) {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        Iterable<? extends IndexDefinition> indexes = resolver.resolveIndexFor(entity.getTypeInformation());
+        return Flux.fromIterable(indexes)
+                .concatMap(index -> mongoTemplate.indexOps(entity.getCollection()).ensureIndex(index))
+                .doOnNext(name -> log.info("Índice '{}' asegurado en la colección '{}'.", name, entity.getCollection()));
+    }
+
+    private Flux<String> dropObsoleteIndexes() {
+        ReactiveIndexOperations indexOps = mongoTemplate.indexOps(Person.class);
+        return indexOps.getIndexInfo()
+                .map(IndexInfo::getName)
+                .filter(OBSOLETE_PERSON_INDEXES::contains)
+                .concatMap(name -> indexOps.dropIndex(name).thenReturn(name))
+                .doOnNext(name -> log.info("Índice obsoleto '{}' eliminado de la colección '{}'.",
+                        name, mongoTemplate.getCollectionName(Person.class)));
+    }
+
+    /**
+     * Misma consulta que PersonRepository#findPendingDeaths, usada para reconstruir el scheduler.
+     */
+    private Mono<Void> checkSchedulerQueryPlan() {
+        Query query = Query.query(Criteria.where("alive").is(true).and("scheduledDeathTime").type(JsonSchemaObject.Type.DATE));
+        String collection = mongoTemplate.getCollectionName(Person.class);
+        return mongoTemplate.getCollection(collection)
+                .flatMap(mongoCollection -> Mono.from(mongoCollection.find(query.getQueryObject())
+                        .projection(new Document("_id", 1).append("status", 1).append("scheduledDeathTime", 1))
+                        .explain(Document.class)))
+                .doOnNext(plan -> {
+                    Object winningPlan = plan.get("queryPlanner", Document.class) != null
+                            ? plan.get("queryPlanner", Document.class).get("winningPlan")
+                            : null;
+                    if (winningPlan == null) {
+                        log.debug("Explain sin winningPlan para la consulta del scheduler: {}", plan.toJson());
+                    } else if (winningPlan instanceof Document document && document.toJson().contains("\"COLLSCAN\"")) {
+                        log.warn("La consulta del scheduler sobre '{}' sigue haciendo COLLSCAN: {}", collection, document.toJson());
+                    } else {
+                        log.info("La consulta del scheduler sobre '{}' usa un índice.", collection);
+                    }
+                })
+                .onErrorResume(error -> {
+                    log.warn("No se pudo obtener el plan de la consulta del scheduler: {}", error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,75 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.mongodb.DefaultMongoCommandTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.MongoCommandTagsProvider;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Añade a la métrica {@code mongodb.driver.commands} la forma de la consulta (tag {@code query}):
+ * los campos del filtro ordenados y sin valores, por ejemplo {@code {_id,alive,status}}. Así cada
+ * consulta de los repositorios tiene su propia latencia sin disparar la cardinalidad.
+ */
+@Component
+public class MongoQueryShapeTagsProvider implements MongoCommandTagsProvider {
+
+    private static final int MAX_SHAPE_LENGTH = 120;
+
+    private final MongoCommandTagsProvider defaults = new DefaultMongoCommandTagsProvider();
+
+    // Forma de cada comando en curso, por requestId, hasta que llega su respuesta
+    private final Map<Integer, String> shapes = new ConcurrentHashMap<>();
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        defaults.commandStarted(event);
+        shapes.put(event.getRequestId(), shape(event.getCommandName(), event.getCommand()));
+    }
+
+    @Override
+    public Iterable<Tag> commandTags(CommandEvent event) {
+        String shape = shapes.remove(event.getRequestId());
+        return Tags.of(defaults.commandTags(event)).and("query", shape != null ? shape : "none");
+    }
+
+    static String shape(String commandName, BsonDocument command) {
+        BsonValue filter = switch (commandName) {
+            case "find", "count", "distinct" -> command.containsKey("filter") ? command.get("filter") : command.get("query");
+            case "findAndModify" -> command.get("query");
+            case "update" -> firstStatementFilter(command.get("updates"));
+            case "delete" -> firstStatementFilter(command.get("deletes"));
+            case "aggregate" -> firstMatch(command.get("pipeline"));
+            default -> null;
+        };
+        if (filter == null || !filter.isDocument()) {
+            return "none";
+        }
+        String shape = "{" + String.join(",", new TreeSet<>(filter.asDocument().keySet())) + "}";
+        return shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "…" : shape;
+    }
+
+    // En las escrituras bulk todas las sentencias comparten forma; basta con la primera
+    private static BsonValue firstStatementFilter(BsonValue statements) {
+        if (statements instanceof BsonArray array && !array.isEmpty() && array.get(0).isDocument()) {
+            return array.get(0).asDocument().get("q");
+        }
+        return null;
+    }
+
+    private static BsonValue firstMatch(BsonValue pipeline) {
+        if (pipeline instanceof BsonArray array && !array.isEmpty() && array.get(0).isDocument()) {
+            return array.get(0).asDocument().get("$match");
+        }
+        return null;
+    }
+}
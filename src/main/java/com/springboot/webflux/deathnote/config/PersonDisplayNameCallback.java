@@ -0,0 +1,21 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.model.Person;
+import org.reactivestreams.Publisher;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Calcula el displayName de cada persona antes de guardarla, sea cual sea el camino de escritura
+ * (servicio, repositorio o plantilla), para que los listados no transformen el nombre por fila.
+ */
+@Component
+public class PersonDisplayNameCallback implements ReactiveBeforeConvertCallback<Person> {
+
+    @Override
+    public Publisher<Person> onBeforeConvert(Person person, String collection) {
+        person.setDisplayName(Person.toDisplayName(person.getName()));
+        return Mono.just(person);
+    }
+}
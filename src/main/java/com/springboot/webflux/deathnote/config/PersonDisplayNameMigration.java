@@ -0,0 +1,69 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.springboot.webflux.deathnote.model.Person;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Rellena displayName en las personas guardadas antes de que existiera el campo. Se hace en Java y
+ * no con $toUpper porque este solo convierte caracteres ASCII. La búsqueda de personas sin displayName
+ * no tiene índice, así que solo se activa con {@code deathnote.people.migrate-display-name=true} (por
+ * ejemplo como argumento de arranque) hasta que se haya ejecutado una vez. Es idempotente.
+ */
+@Component
+@Order(2)
+@ConditionalOnProperty(name = "deathnote.people.migrate-display-name", havingValue = "true")
+public class PersonDisplayNameMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonDisplayNameMigration.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public PersonDisplayNameMigration(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Query missing = Query.query(Criteria.where("displayName").exists(false).and("name").exists(true));
+        missing.fields().include("_id", "name");
+        mongoTemplate.find(missing, Document.class, mongoTemplate.getCollectionName(Person.class))
+                .buffer(BATCH_SIZE)
+                .concatMap(this::backfill)
+                .reduce(0, Integer::sum)
+                .subscribe(
+                        count -> {
+                            if (count > 0) {
+                                log.info("displayName calculado para {} personas existentes.", count);
+                            }
+                        },
+                        error -> log.error("ERROR al rellenar displayName: {}", error.getMessage(), error)
+                );
+    }
+
+    private Mono<Integer> backfill(List<Document> people) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, Person.class);
+        people.forEach(person -> bulk.updateOne(
+                Query.query(Criteria.where("_id").is(person.get("_id")).and("displayName").exists(false)),
+                Update.update("displayName", Person.toDisplayName(person.getString("name")))));
+        return bulk.execute().map(BulkWriteResult::getModifiedCount);
+    }
+}
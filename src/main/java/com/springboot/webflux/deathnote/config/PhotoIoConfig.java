@@ -0,0 +1,20 @@
+package com.springboot.webflux.deathnote.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Pool propio para las llamadas bloqueantes al sistema de ficheros de las fotos, separado del
+ * boundedElastic compartido: una ráfaga de subidas o un disco lento no retrasa al resto de la app.
+ */
+@Configuration
+public class PhotoIoConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler photoIoScheduler(@Value("${deathnote.photos.io-threads:8}") int ioThreads) {
+        return Schedulers.newBoundedElastic(ioThreads, 10_000, "photo-io");
+    }
+}
@@ -0,0 +1,39 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.services.PhotoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Migra el antiguo directorio plano de fotos ({@code UUID-nombre}) al almacén por contenido. Se
+ * activa con {@code deathnote.photos.migrate-flat-layout=true} (por ejemplo como argumento de
+ * arranque) y es reanudable: cada foto se copia y se enlaza antes de borrar el original.
+ */
+@Component
+@Order(3)
+@ConditionalOnProperty(name = "deathnote.photos.migrate-flat-layout", havingValue = "true")
+public class PhotoStoreMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoStoreMigration.class);
+
+    private final PhotoService photoService;
+
+    public PhotoStoreMigration(PhotoService photoService) {
+        this.photoService = photoService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        log.info("Migrando fotos del directorio plano al almacén por contenido...");
+        photoService.migrateFlatLayout()
+                .subscribe(
+                        count -> log.info("Migración de fotos terminada: {} ficheros movidos al almacén por contenido.", count),
+                        error -> log.error("ERROR en la migración de fotos: {}", error.getMessage(), error)
+                );
+    }
+}
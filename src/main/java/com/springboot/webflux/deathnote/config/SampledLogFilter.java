@@ -0,0 +1,93 @@
+package com.springboot.webflux.deathnote.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Muestreo de las líneas repetitivas del camino caliente. Los eventos marcados con {@link #SAMPLED}
+ * pasan como mucho {@code permitsPerSecond} veces por segundo por plantilla de mensaje; WARN y ERROR
+ * no se muestrean nunca. Va en el appender asíncrono de {@code logback-spring.xml}, que filtra en el
+ * hilo que registra: lo descartado no se formatea, no se encola y no llega a la consola.
+ * <p>
+ * Es un filtro de appender y no un TurboFilter porque Logback no pasa los eventos de la API fluida
+ * de SLF4J ({@code log.atInfo()...}) por los TurboFilter.
+ */
+public class SampledLogFilter extends Filter<ILoggingEvent> {
+
+    public static final Marker SAMPLED = MarkerFactory.getMarker("SAMPLED");
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private int permitsPerSecond = 10;
+
+    // Las plantillas son literales, pero se acota por si alguna se construyera dinámicamente
+    private int maxTemplates = 1024;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (event.getLevel().isGreaterOrEqual(Level.WARN) || !isSampled(event.getMarkerList()) || event.getMessage() == null) {
+            return FilterReply.NEUTRAL;
+        }
+        Window window = windows.get(event.getMessage());
+        if (window == null) {
+            if (windows.size() >= maxTemplates) {
+                return FilterReply.NEUTRAL;
+            }
+            window = windows.computeIfAbsent(event.getMessage(), key -> new Window());
+        }
+        return window.tryAcquire(System.nanoTime() / NANOS_PER_SECOND, permitsPerSecond)
+                ? FilterReply.NEUTRAL
+                : FilterReply.DENY;
+    }
+
+    private static boolean isSampled(List<Marker> markers) {
+        if (markers == null) {
+            return false;
+        }
+        for (int i = 0; i < markers.size(); i++) {
+            if (markers.get(i).contains(SAMPLED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setPermitsPerSecond(int permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public void setMaxTemplates(int maxTemplates) {
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * Ventana fija de un segundo; no reserva memoria por evento.
+     */
+    private static final class Window {
+        private volatile long second = Long.MIN_VALUE;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private boolean tryAcquire(long now, int permits) {
+            if (second != now) {
+                synchronized (this) {
+                    if (second != now) {
+                        count.set(0);
+                        second = now;
+                    }
+                }
+            }
+            return count.incrementAndGet() <= permits;
+        }
+    }
+}
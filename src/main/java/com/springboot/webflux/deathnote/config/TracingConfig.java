@@ -0,0 +1,39 @@
+package com.springboot.webflux.deathnote.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Trazas de las peticiones a través de las cadenas reactivas. El contexto de Observation viaja en el
+ * contexto de Reactor ({@code spring.reactor.context-propagation=auto}) y de ahí lo toma el driver de
+ * Mongo, así que cada comando queda como span hijo de la petición que lo lanzó.
+ * <p>
+ * Exportación: por OTLP con {@code management.otlp.tracing.endpoint} (configurado por Spring Boot) o a
+ * un fichero JSON por líneas con {@code deathnote.tracing.file}.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoObservationCustomizer(ObservationRegistry observationRegistry) {
+        return builder -> builder
+                .contextProvider(ContextProviderFactory.create(observationRegistry))
+                .addCommandListener(new MongoObservationCommandListener(observationRegistry));
+    }
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnProperty("deathnote.tracing.file")
+    public JsonLinesSpanExporter jsonLinesSpanExporter(@Value("${deathnote.tracing.file}") Path file) throws IOException {
+        // El SDK de OpenTelemetry cierra el exportador al apagarse
+        return new JsonLinesSpanExporter(file);
+    }
+}
@@ -0,0 +1,22 @@
+package com.springboot.webflux.deathnote.config;
+
+import com.springboot.webflux.deathnote.controller.ActiveDeathNoteArgumentResolver;
+import com.springboot.webflux.deathnote.services.ActiveDeathNoteStore;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+@Configuration
+public class WebConfig implements WebFluxConfigurer {
+
+    private final ActiveDeathNoteStore activeDeathNoteStore;
+
+    public WebConfig(ActiveDeathNoteStore activeDeathNoteStore) {
+        this.activeDeathNoteStore = activeDeathNoteStore;
+    }
+
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        configurer.addCustomResolver(new ActiveDeathNoteArgumentResolver(activeDeathNoteStore));
+    }
+}
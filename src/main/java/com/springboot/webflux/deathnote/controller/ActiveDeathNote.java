@@ -0,0 +1,17 @@
+package com.springboot.webflux.deathnote.controller;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Inyecta en un parámetro {@code String} el id de la Death Note activa del visitante, o
+ * {@code null} si no hay ninguna. Lo resuelve {@link ActiveDeathNoteArgumentResolver}.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ActiveDeathNote {
+}
@@ -0,0 +1,32 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.services.ActiveDeathNoteStore;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.reactive.BindingContext;
+import org.springframework.web.reactive.result.method.HandlerMethodArgumentResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resuelve los parámetros {@link ActiveDeathNote} con el {@link ActiveDeathNoteStore} configurado.
+ */
+public class ActiveDeathNoteArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final ActiveDeathNoteStore activeDeathNoteStore;
+
+    public ActiveDeathNoteArgumentResolver(ActiveDeathNoteStore activeDeathNoteStore) {
+        this.activeDeathNoteStore = activeDeathNoteStore;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(ActiveDeathNote.class)
+                && String.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Mono<Object> resolveArgument(MethodParameter parameter, BindingContext bindingContext, ServerWebExchange exchange) {
+        // Sin Death Note activa el Mono queda vacío y el parámetro llega como null
+        return activeDeathNoteStore.get(exchange).cast(Object.class);
+    }
+}
@@ -0,0 +1,249 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
+import com.springboot.webflux.deathnote.services.DeathNoteService;
+import com.springboot.webflux.deathnote.services.OwnerService;
+import com.springboot.webflux.deathnote.services.PersonImportService;
+import com.springboot.webflux.deathnote.services.PersonService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * API JSON para clientes automáticos, sobre los mismos servicios que {@link PersonController}: cada
+ * operación es una sola petición con respuesta JSON compacta (sin nulos), sin formularios ni
+ * redirecciones. Los listados se sirven en streaming como {@code application/x-ndjson} cuando el
+ * cliente lo pide en Accept. Las rutas están en {@code ApiRouterConfig}.
+ */
+@Component
+public class PersonApiHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonApiHandler.class);
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private final PersonService personService;
+    private final DeathNoteService deathNoteService;
+    private final PersonImportService personImportService;
+    private final OwnerService ownerService;
+
+    // Parte el cuerpo en líneas a medida que llega, sin cargarlo entero
+    private final StringDecoder lineDecoder = StringDecoder.allMimeTypes();
+
+    public PersonApiHandler(PersonService personService, DeathNoteService deathNoteService,
+                            PersonImportService personImportService, OwnerService ownerService) {
+        this.personService = personService;
+        this.deathNoteService = deathNoteService;
+        this.personImportService = personImportService;
+        this.ownerService = ownerService;
+    }
+
+    /**
+     * En JSON devuelve una página y el cursor de la siguiente; en NDJSON recorre todas las páginas
+     * por cursor y escribe cada persona según llega, sin acumular el listado.
+     */
+    public Mono<ServerResponse> listPersons(ServerRequest request) {
+        String deathNoteId = request.queryParam("deathNoteId").filter(value -> !value.isBlank()).orElse(null);
+        Boolean alive = request.queryParam("alive").map(Boolean::valueOf).orElse(null);
+        String status = request.queryParam("status").filter(value -> !value.isBlank()).orElse(null);
+
+        if (wantsNdjson(request)) {
+            Flux<PersonResource> people = personService.findPage(deathNoteId, alive, status, null, PersonService.MAX_PAGE_SIZE)
+                    .collectList()
+                    .expand(page -> page.size() < PersonService.MAX_PAGE_SIZE
+                            ? Mono.empty()
+                            : personService.findPage(deathNoteId, alive, status,
+                                    PersonCursor.of(page.get(page.size() - 1)).encode(), PersonService.MAX_PAGE_SIZE).collectList())
+                    .flatMapIterable(page -> page)
+                    .map(PersonResource::of);
+            return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON).body(people, PersonResource.class);
+        }
+
+        int size;
+        try {
+            size = Math.max(1, Math.min(request.queryParam("size").map(Integer::parseInt).orElse(DEFAULT_PAGE_SIZE), PersonService.MAX_PAGE_SIZE));
+        } catch (NumberFormatException e) {
+            return error(HttpStatus.BAD_REQUEST, "size debe ser un número.");
+        }
+        PersonListPage page = new PersonListPage(size);
+        return page.track(personService.findPage(deathNoteId, alive, status, request.queryParam("after").orElse(null), size))
+                .map(PersonResource::of)
+                .collectList()
+                .flatMap(items -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new PersonPageResource(items, page.getNextCursor())));
+    }
+
+    public Mono<ServerResponse> getPerson(ServerRequest request) {
+        return personService.findById(request.pathVariable("id"))
+                .flatMap(person -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(PersonResource.of(person)))
+                .switchIfEmpty(notFound("Persona no encontrada: " + request.pathVariable("id")));
+    }
+
+    /**
+     * Anota una persona y la cuenta en su Death Note, igual que el formulario de alta.
+     */
+    public Mono<ServerResponse> createPerson(ServerRequest request) {
+        return request.bodyToMono(NewPersonRequest.class)
+                .switchIfEmpty(Mono.error(new ServerWebInputException("Falta el cuerpo de la petición.")))
+                .flatMap(body -> {
+                    if (body.name() == null || body.name().isBlank()) {
+                        return error(HttpStatus.BAD_REQUEST, "El nombre es obligatorio.");
+                    }
+                    if (body.deathNoteId() == null || body.deathNoteId().isBlank()) {
+                        return error(HttpStatus.BAD_REQUEST, "deathNoteId es obligatorio.");
+                    }
+                    // Se comprueba antes de guardar, para no dejar personas anotadas en una Death Note que no las cuenta
+                    return deathNoteService.findById(body.deathNoteId())
+                            .flatMap(deathNote -> isOwnName(deathNote, body.name()))
+                            .flatMap(ownName -> {
+                                if (ownName) {
+                                    return error(HttpStatus.CONFLICT, "El propietario no puede escribir su propio nombre.");
+                                }
+                                Person person = new Person(body.name(), null, body.deathDetails(), null, body.deathNoteId());
+                                return personService.saveInitialEntry(person)
+                                        .flatMap(saved -> deathNoteService.writePersonInDeathNote(body.deathNoteId(), saved.getId(),
+                                                        saved.getDeathDetails(), saved.getScheduledDeathTime(), saved.getFacePhoto())
+                                                .thenReturn(saved))
+                                        .flatMap(saved -> ServerResponse.created(URI.create("/api/persons/" + saved.getId()))
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .bodyValue(PersonResource.of(saved)));
+                            })
+                            .switchIfEmpty(notFound("Death Note no encontrada: " + body.deathNoteId()));
+                });
+    }
+
+    /**
+     * Si el nombre es el del propietario de la Death Note, que no puede escribirse a sí mismo.
+     */
+    private Mono<Boolean> isOwnName(DeathNote deathNote, String name) {
+        if (deathNote.getOwnerId() == null) {
+            return Mono.just(false);
+        }
+        return ownerService.findByName(name)
+                .map(owner -> deathNote.getOwnerId().equals(owner.getId()))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Importación masiva desde NDJSON ({@code {"name": ..., "deathDetails": ...}} por línea) o CSV
+     * ({@code name,deathDetails}, cabecera opcional). Responde en NDJSON con el resultado de cada fila.
+     */
+    public Mono<ServerResponse> importPeople(ServerRequest request) {
+        String deathNoteId = request.queryParam("deathNoteId").filter(value -> !value.isBlank()).orElse(null);
+        if (deathNoteId == null) {
+            return error(HttpStatus.BAD_REQUEST, "deathNoteId es obligatorio.");
+        }
+        MediaType contentType = request.headers().contentType().orElse(MediaType.APPLICATION_NDJSON);
+        PersonImportService.Format format;
+        if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(contentType)) {
+            format = PersonImportService.Format.NDJSON;
+        } else if (TEXT_CSV.equalsTypeAndSubtype(contentType)) {
+            format = PersonImportService.Format.CSV;
+        } else {
+            return error(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Se admite application/x-ndjson o text/csv.");
+        }
+        return deathNoteService.findById(deathNoteId)
+                .flatMap(deathNote -> {
+                    Flux<String> lines = lineDecoder.decode(request.body(BodyExtractors.toDataBuffers()),
+                            ResolvableType.forClass(String.class), contentType, null);
+                    return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+                            .body(personImportService.importPeople(deathNoteId, lines, format), PersonImportService.ImportResult.class);
+                })
+                .switchIfEmpty(notFound("Death Note no encontrada: " + deathNoteId));
+    }
+
+    public Mono<ServerResponse> specifyDeath(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return request.bodyToMono(DeathRequest.class)
+                .switchIfEmpty(Mono.error(new ServerWebInputException("Falta el cuerpo de la petición.")))
+                .flatMap(body -> {
+                    if (body.deathDate() == null) {
+                        return error(HttpStatus.BAD_REQUEST, "deathDate es obligatorio.");
+                    }
+                    return personService.findById(id)
+                            .flatMap(person -> personService.specifyDeath(id, body.deathDate(), body.deathDetails(), body.causeOfDeath()))
+                            .flatMap(person -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(PersonResource.of(person)))
+                            .switchIfEmpty(notFound("Persona no encontrada: " + id));
+                });
+    }
+
+    public Mono<ServerResponse> deletePerson(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return personService.findById(id)
+                .flatMap(person -> personService.delete(person).then(ServerResponse.noContent().build()))
+                .switchIfEmpty(notFound("Persona no encontrada: " + id));
+    }
+
+    public Mono<ServerResponse> listDeathNotes(ServerRequest request) {
+        MediaType contentType = wantsNdjson(request) ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        return ServerResponse.ok().contentType(contentType).body(deathNoteService.findAll(), DeathNote.class);
+    }
+
+    public Mono<ServerResponse> rejectOwnership(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return deathNoteService.rejectOwnership(id)
+                .flatMap(deathNote -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(deathNote))
+                .switchIfEmpty(notFound("Death Note no encontrada: " + id));
+    }
+
+    /**
+     * Respuesta de error de la API: {@code {"error": "..."}}.
+     */
+    public static Mono<ServerResponse> error(HttpStatus status, String message) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("error", message != null ? message : status.getReasonPhrase()));
+    }
+
+    private static Mono<ServerResponse> notFound(String message) {
+        return Mono.defer(() -> {
+            log.debug("API: {}", message);
+            return error(HttpStatus.NOT_FOUND, message);
+        });
+    }
+
+    private static boolean wantsNdjson(ServerRequest request) {
+        return request.headers().accept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PersonResource(String id, String name, String deathNoteId, boolean alive, String status,
+                                 LocalDateTime entryTime, LocalDateTime scheduledDeathTime, LocalDateTime deathDate,
+                                 String causeOfDeath, String deathDetails, String facePhoto) {
+
+        static PersonResource of(Person person) {
+            return new PersonResource(person.getId(), person.getName(), person.getDeathNoteId(), person.isAlive(),
+                    person.getStatus(), person.getEntryTime(), person.getScheduledDeathTime(), person.getDeathDate(),
+                    person.getCauseOfDeath(), person.getDeathDetails(), person.getFacePhoto());
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PersonPageResource(List<PersonResource> items, String next) {
+    }
+
+    public record NewPersonRequest(String name, String deathDetails, String deathNoteId) {
+    }
+
+    public record DeathRequest(LocalDateTime deathDate, String deathDetails, String causeOfDeath) {
+    }
+}
@@ -1,9 +1,16 @@
 package com.springboot.webflux.deathnote.controller;
 
+import com.springboot.webflux.deathnote.config.SampledLogFilter;
 import com.springboot.webflux.deathnote.model.DeathNote;
 import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.services.ActiveDeathNoteStore;
 import com.springboot.webflux.deathnote.services.DeathNoteService;
+import com.springboot.webflux.deathnote.services.InvalidPhotoException;
 import com.springboot.webflux.deathnote.services.PersonService;
+import com.springboot.webflux.deathnote.services.PhotoService;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,30 +26,30 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.support.SessionStatus;
 import org.springframework.web.server.ServerWebExchange;
-import org.springframework.web.server.WebSession; // Importar WebSession
+import org.thymeleaf.spring6.context.webflux.ReactiveDataDriverContextVariable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.SignalType;
 
-import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.UUID;
+import java.util.function.Function;
 
 @Controller
 public class PersonController {
 
     private final PersonService personService;
     private final DeathNoteService deathNoteService;
+    private final PhotoService photoService;
+    private final ActiveDeathNoteStore activeDeathNoteStore;
+    private final ObservationRegistry observationRegistry;
 
     @Value("${deathnote.upload.path}")
     private String photoDisplayPath;
@@ -52,9 +59,19 @@ public class PersonController {
 
     public static final Logger log = LoggerFactory.getLogger(PersonController.class);
 
-    public PersonController(PersonService personService, DeathNoteService deathNoteService) {
+    // Filas que se acumulan antes de volcar un trozo de HTML al cliente
+    private static final int LIST_RENDER_BUFFER_ROWS = 20;
+
+    // Una observación por etapa del alta (tag stage) y resultado (tag outcome): timer y span
+    private static final String WRITE_OBSERVATION = "deathnote.person.write";
+
+    public PersonController(PersonService personService, DeathNoteService deathNoteService, PhotoService photoService,
+                            ActiveDeathNoteStore activeDeathNoteStore, ObservationRegistry observationRegistry) {
         this.personService = personService;
         this.deathNoteService = deathNoteService;
+        this.photoService = photoService;
+        this.activeDeathNoteStore = activeDeathNoteStore;
+        this.observationRegistry = observationRegistry;
     }
 
     @GetMapping("/")
@@ -74,7 +91,7 @@ public class PersonController {
     }
 
     @PostMapping("/processDeathNoteSelection")
-    public Mono<String> processDeathNoteSelection(ServerWebExchange exchange, WebSession session) {
+    public Mono<String> processDeathNoteSelection(ServerWebExchange exchange) {
         return exchange.getFormData()
                 .flatMap(formData -> {
                     String selectedDeathNoteId = formData.getFirst("selectedDeathNoteId");
@@ -84,14 +101,13 @@ public class PersonController {
                         return Mono.just("redirect:/?error=" + encodeURL("Por favor, selecciona una Death Note."));
                     }
                     log.info("Death Note seleccionada con ID: {}. Guardando en sesión y redirigiendo a /rules.", selectedDeathNoteId);
-                    session.getAttributes().put("ACTIVE_DEATH_NOTE_ID", selectedDeathNoteId);
-                    return Mono.just("redirect:/rules");
+                    return activeDeathNoteStore.set(exchange, selectedDeathNoteId)
+                            .thenReturn("redirect:/rules");
                 });
     }
 
     @GetMapping("/rules")
-    public Mono<String> showRulesPage(Model model, WebSession session) {
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
+    public Mono<String> showRulesPage(Model model, @ActiveDeathNote String activeDeathNoteId) {
         if (activeDeathNoteId == null) {
             log.warn("No hay Death Note activa en sesión, redirigiendo a selección (/).");
             return Mono.just("redirect:/");
@@ -103,8 +119,7 @@ public class PersonController {
     }
 
     @GetMapping("/anotarNombres")
-    public Mono<String> showAnotarNombresPage(Model model, WebSession session) {
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
+    public Mono<String> showAnotarNombresPage(Model model, @ActiveDeathNote String activeDeathNoteId) {
         if (activeDeathNoteId == null) {
             log.warn("No hay Death Note activa en sesión para anotar nombres. Redirigiendo a selección (/).");
             return Mono.just("redirect:/");
@@ -119,7 +134,7 @@ public class PersonController {
 
     @PostMapping("/api/test-upload")
     @ResponseBody
-    public Mono<String> handleFileUploadTest(@RequestParam(name = "file", required = false) FilePart filePart) {
+    public Mono<String> handleFileUploadTest(@RequestPart(name = "file", required = false) FilePart filePart) {
         if (filePart != null) {
             log.info("[TEST UPLOAD] Archivo recibido: {}, tamaño: {}", filePart.filename(), filePart.headers().getContentLength());
 
@@ -132,30 +147,28 @@ public class PersonController {
 
     @PostMapping("/persons/add")
     public Mono<String> savePerson(@Valid Person personInput, BindingResult result, Model model,
-                                   @RequestParam(name = "file", required = false) FilePart file,
+                                   @RequestPart(name = "file", required = false) FilePart file,
                                    @RequestParam(name = "deathTime", required = false) String deathTimeStr,
-                                   WebSession session, SessionStatus sessionStatus) {
+                                   @ActiveDeathNote String activeDeathNoteId, SessionStatus sessionStatus) {
 
         final Person person = personInput;
 
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
         if (activeDeathNoteId == null) {
             log.warn("No hay Death Note activa en sesión al guardar persona. Redirigiendo.");
             return Mono.just("redirect:/?error=" + encodeURL("Por favor, selecciona una Death Note primero."));
         }
         person.setDeathNoteId(activeDeathNoteId);
 
-        log.info("Inicio de savePerson para: {}. DN Activa: {}", person.getName(), activeDeathNoteId);
+        log.debug("Inicio de savePerson para: {}. DN Activa: {}", person.getName(), activeDeathNoteId);
 
-        if (file != null) {
-            log.info("FilePart 'file' NO es nulo.");
-            if (file.filename() != null && !file.filename().isEmpty()) {
-                log.info("Nombre original del archivo en FilePart: '{}', ContentType: {}", file.filename(), file.headers().getContentType());
+        if (log.isDebugEnabled()) {
+            if (file == null) {
+                log.debug("FilePart 'file' ES nulo.");
+            } else if (file.filename() != null && !file.filename().isEmpty()) {
+                log.debug("Nombre original del archivo en FilePart: '{}', ContentType: {}", file.filename(), file.headers().getContentType());
             } else {
-                log.warn("FilePart 'file' recibido, pero su nombre es nulo o vacío. Headers: {}", file.headers());
+                log.debug("FilePart 'file' recibido, pero su nombre es nulo o vacío. Headers: {}", file.headers());
             }
-        } else {
-            log.info("FilePart 'file' ES nulo.");
         }
 
         if (result.hasErrors()) {
@@ -170,81 +183,94 @@ public class PersonController {
         Mono<Void> photoProcessingMono;
 
         boolean processFile = (file != null && file.filename() != null && !file.filename().isEmpty());
-        log.info("¿Se procesará el archivo? : {}", processFile);
+        log.debug("¿Se procesará el archivo? : {}", processFile);
 
         if (processFile) {
             String originalFilename = file.filename();
-            String safeOriginalFilename = originalFilename.replaceAll("[^a-zA-Z0-9._-]", "_");
-            String uniqueFilename = UUID.randomUUID().toString() + "-" + safeOriginalFilename;
-            Path targetPath = Paths.get(uploadPath).resolve(uniqueFilename);
-            File uploadDirFile = new File(uploadPath);
-
-            if (!uploadDirFile.exists()) {
-                boolean dirCreated = uploadDirFile.mkdirs();
-                log.info("Directorio de subida {} creado: {}", uploadPath, dirCreated);
-            }
-
-            log.info("Intentando guardar archivo: '{}' como '{}' en la ruta: '{}'", originalFilename, uniqueFilename, targetPath);
-            photoProcessingMono = file.transferTo(targetPath)
-                    .doOnSuccess(voidResult -> {
-                        log.info("ARCHIVO TRANSFERIDO EXITOSAMENTE: '{}'. Asignando nombre a person.facePhoto.", uniqueFilename);
-                        person.setFacePhoto(uniqueFilename);
+            log.debug("Intentando guardar archivo: '{}' en el almacén de fotos '{}'", originalFilename, uploadPath);
+            photoProcessingMono = timeStage("upload", photoService.store(file))
+                    .doOnNext(photoKey -> {
+                        log.debug("Archivo '{}' guardado como '{}'.", originalFilename, photoKey);
+                        person.setFacePhoto(photoKey);
+                        photoService.generateVariantsAsync(photoKey);
                     })
                     .doOnError(e -> {
                         log.error("ERROR AL TRANSFERIR ARCHIVO '{}': {}. La foto no se asignará.", originalFilename, e.getMessage(), e);
                     })
                     .then() // Convierte a Mono<Void>
-                    .onErrorResume(e -> {
+                    // Una foto rechazada se muestra en el formulario; otros fallos continúan sin foto
+                    .onErrorResume(e -> !(e instanceof InvalidPhotoException), e -> {
                         log.error("ERROR CATASTRÓFICO AL TRANSFERIR ARCHIVO '{}', continuando sin foto: {}", originalFilename, e.getMessage());
                         return Mono.empty();
                     });
         } else {
-            log.info("No se proporcionó archivo de foto válido. person.facePhoto actual (antes de saveInitialEntry): {}", person.getFacePhoto());
+            log.debug("No se proporcionó archivo de foto válido. Foto actual: {}", person.getFacePhoto());
             photoProcessingMono = Mono.empty();
         }
 
-        return photoProcessingMono
-                .then(Mono.defer(() -> {
-                    log.info("Dentro de Mono.defer. Nombre: {}, Foto actual en objeto person (después de photoProcessingMono): {}", person.getName(), person.getFacePhoto());
+        // Solo las entradas nuevas (o movidas de Death Note) se cuentan en la Death Note activa
+        final boolean isNewEntry = person.getId() == null || person.getId().isEmpty();
 
+        Mono<String> write = photoProcessingMono
+                .then(Mono.defer(() -> {
                     if (person.getId() == null || person.getId().isEmpty()) {
-                        log.info("Llamando a personService.saveInitialEntry para: {}. Foto que se pasará al servicio: {}", person.getName(), person.getFacePhoto());
-                        return personService.saveInitialEntry(person);
+                        return timeStage("save_initial_entry", personService.saveInitialEntry(person));
                     } else {
                         // Lógica de actualización (asegúrate que esta lógica también usa person.getFacePhoto())
-                        log.info("Llamando a lógica de actualización para: {}. Foto: {}", person.getName(), person.getFacePhoto());
-                        return personService.findById(person.getId())
+                        log.debug("Actualizando persona {} con foto {}", person.getId(), person.getFacePhoto());
+                        return timeStage("update", personService.findById(person.getId())
                                 .flatMap(existingPerson -> {
+                                    String previousDeathNoteId = existingPerson.getDeathNoteId();
+                                    String previousPhoto = existingPerson.getFacePhoto();
                                     existingPerson.setName(person.getName());
                                     existingPerson.setDeathDate(person.getDeathDate());
                                     existingPerson.setDeathDetails(person.getDeathDetails());
                                     existingPerson.setFacePhoto(person.getFacePhoto()); // Usa la foto del objeto 'person'
                                     existingPerson.setDeathNoteId(activeDeathNoteId);
-                                    return personService.save(existingPerson);
+                                    // La foto sustituida pierde la referencia de esta persona
+                                    Mono<Void> releasePreviousPhoto = previousPhoto != null && !previousPhoto.equals(existingPerson.getFacePhoto())
+                                            ? photoService.release(previousPhoto)
+                                            : Mono.empty();
+                                    if (activeDeathNoteId.equals(previousDeathNoteId)) {
+                                        return personService.save(existingPerson)
+                                                .flatMap(savedPerson -> releasePreviousPhoto.thenReturn(savedPerson));
+                                    }
+                                    // Cambió de Death Note: contarla en la activa la descuenta de aquella en la que estaba contada
+                                    return personService.save(existingPerson)
+                                            .flatMap(savedPerson -> releasePreviousPhoto
+                                                    .then(deathNoteService.writePersonInDeathNote(activeDeathNoteId, savedPerson.getId(),
+                                                            savedPerson.getDeathDetails(), savedPerson.getDeathDate(), savedPerson.getFacePhoto()))
+                                                    .thenReturn(savedPerson));
                                 })
-                                .switchIfEmpty(Mono.error(new RuntimeException("No se encontró la persona para actualizar con ID: " + person.getId())));
+                                .switchIfEmpty(Mono.error(new RuntimeException("No se encontró la persona para actualizar con ID: " + person.getId()))));
                     }
                 }))
                 .flatMap(savedPerson -> {
-                    log.info("Persona '{}' guardada/procesada (ID: {}). Foto: {}. Estado: {}, Viva: {}. Asociando con DN: {}",
-                            savedPerson.getName(), savedPerson.getId(), savedPerson.getFacePhoto(), savedPerson.getStatus(), savedPerson.isAlive(), activeDeathNoteId);
-
+                    if (!isNewEntry) {
+                        return Mono.just(savedPerson);
+                    }
                     LocalDateTime deathTimestampForNote = savedPerson.getScheduledDeathTime() != null ? savedPerson.getScheduledDeathTime() : savedPerson.getDeathDate();
                     if (person.getDeathDate() != null && (deathTimeStr != null && !deathTimeStr.isEmpty())) {
                         deathTimestampForNote = person.getDeathDate(); // Si se especificó fecha y hora explícita, usar esa.
                     }
 
-                    return deathNoteService.writePersonInDeathNote(
+                    return timeStage("write_in_death_note", deathNoteService.writePersonInDeathNote(
                             activeDeathNoteId,
                             savedPerson.getId(),
                             savedPerson.getDeathDetails(),
                             deathTimestampForNote,
                             savedPerson.getFacePhoto()
-                    ).map(updatedDeathNote -> savedPerson);
-                })
-                .doOnSuccess(finalSavedPerson -> {
-                    log.info("Proceso completado para persona {} ({}). Redirigiendo.", finalSavedPerson.getName(), finalSavedPerson.getId());
+                    )).map(updatedDeathNote -> savedPerson);
                 })
+                .doOnSuccess(savedPerson -> log.atInfo()
+                        .addMarker(SampledLogFilter.SAMPLED)
+                        .setMessage("Persona anotada")
+                        .addKeyValue("personId", savedPerson.getId())
+                        .addKeyValue("deathNoteId", activeDeathNoteId)
+                        .addKeyValue("status", savedPerson.getStatus())
+                        .addKeyValue("photo", savedPerson.getFacePhoto())
+                        .addKeyValue("newEntry", isNewEntry)
+                        .log())
                 .thenReturn("redirect:/listNames?success=" + encodeURL("Persona '" + person.getName() + "' procesada exitosamente."))
                 .onErrorResume(e -> {
                     log.error("ERROR FINAL en el flujo de savePerson para '{}': {}", person.getName(), e.getMessage(), e);
@@ -252,33 +278,48 @@ public class PersonController {
                     model.addAttribute("button", "Reintentar Anotar");
                     model.addAttribute("activeDeathNoteId", activeDeathNoteId);
                     model.addAttribute("person", person);
-                    model.addAttribute("errorMessage", "Error al procesar: " + e.getMessage());
+                    if (e instanceof InvalidPhotoException) {
+                        model.addAttribute("photoError", e.getMessage());
+                    } else {
+                        model.addAttribute("errorMessage", "Error al procesar: " + e.getMessage());
+                    }
                     return Mono.just("form");
                 });
+        // La observación total es la madre de las de cada etapa
+        return observeStage("total", write, view -> view.startsWith("redirect:") ? "redirect" : "form");
     }
 
     @GetMapping("/listNames")
-    public Mono<String> listAllPersons(Model model, WebSession session) {
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
-
-        log.info("Cargando página de listado de todas las personas.");
-        Flux<Person> peopleFlux = personService.findAll().map(person -> {
-            person.setName(person.getName().toUpperCase());
-            return person;
-        });
-        model.addAttribute("people", peopleFlux);
+    public Mono<String> listAllPersons(@RequestParam(name = "size", defaultValue = "50") int size,
+                                       @RequestParam(name = "after", required = false) String after,
+                                       @RequestParam(name = "soloActiva", defaultValue = "false") boolean onlyActiveNote,
+                                       @RequestParam(name = "alive", required = false) Boolean alive,
+                                       @RequestParam(name = "status", required = false) String status,
+                                       Model model, @ActiveDeathNote String activeDeathNoteId) {
+        int pageSize = Math.max(1, Math.min(size, PersonService.MAX_PAGE_SIZE));
+        String statusFilter = (status == null || status.isBlank()) ? null : status;
+        String deathNoteFilter = onlyActiveNote ? activeDeathNoteId : null;
+
+        log.debug("Cargando página de listado de personas (tamaño {}, cursor {}).", pageSize, after);
+        PersonListPage page = new PersonListPage(pageSize);
+        Flux<Person> peopleFlux = page.track(personService.findPage(deathNoteFilter, alive, statusFilter, after, pageSize));
+        // Las filas se escriben en la respuesta según llegan de Mongo, sin esperar a la página completa
+        model.addAttribute("people", new ReactiveDataDriverContextVariable(peopleFlux, LIST_RENDER_BUFFER_ROWS));
+        model.addAttribute("page", page);
+        model.addAttribute("soloActiva", onlyActiveNote);
+        model.addAttribute("aliveFilter", alive);
+        model.addAttribute("statusFilter", statusFilter);
         model.addAttribute("pageTitle", "Listado de Personas Anotadas");
         model.addAttribute("activeDeathNoteId", activeDeathNoteId);
         return Mono.just("list");
     }
 
     @GetMapping("/view/{id}")
-    public Mono<String> viewPersonDetails(Model model, @PathVariable String id, WebSession session) {
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
+    public Mono<String> viewPersonDetails(Model model, @PathVariable String id, @ActiveDeathNote String activeDeathNoteId) {
 
         return personService.findById(id)
                 .doOnNext(person -> {
-                    log.info("Viendo persona: {}", person.getName());
+                    log.debug("Viendo persona: {}", person.getId());
                     model.addAttribute("person", person);
                     model.addAttribute("pageTitle", "Detalle Persona: " + person.getName());
                     model.addAttribute("activeDeathNoteId", activeDeathNoteId);
@@ -295,24 +336,10 @@ public class PersonController {
     }
 
     @GetMapping("/delete/{id}")
-    public Mono<String> deletePerson(@PathVariable String id, WebSession session) {
+    public Mono<String> deletePerson(@PathVariable String id) {
         return personService.findById(id)
                 .flatMap(person -> {
-                    Mono<Void> deleteFileMono = Mono.empty();
-                    if (person.getFacePhoto() != null && !person.getFacePhoto().isEmpty()) {
-                        Path photoPath = Paths.get(uploadPath).resolve(person.getFacePhoto());
-                        File photoFile = photoPath.toFile();
-                        if (photoFile.exists()) {
-                            deleteFileMono = Mono.fromRunnable(() -> {
-                                if (photoFile.delete()) {
-                                    log.info("Archivo de foto {} eliminado.", person.getFacePhoto());
-                                } else {
-                                    log.warn("No se pudo eliminar el archivo de foto {}.", person.getFacePhoto());
-                                }
-                            }).subscribeOn(Schedulers.boundedElastic()).then();
-                        }
-                    }
-                    return deleteFileMono.then(personService.delete(person))
+                    return personService.delete(person)
                             .thenReturn("redirect:/listNames?success=" + encodeURL("Persona '" + person.getName() + "' eliminada."));
                 })
                 .switchIfEmpty(Mono.defer(() -> {
@@ -323,20 +350,52 @@ public class PersonController {
     }
 
     @GetMapping("/deathnote/reject/{id}") // id aquí es el deathNoteId
-    public Mono<String> rejectOwnership(@PathVariable String id, WebSession session) {
+    public Mono<String> rejectOwnership(@PathVariable String id, @ActiveDeathNote String activeDeathNoteId,
+                                        ServerWebExchange exchange) {
         return deathNoteService.rejectOwnership(id)
-                .doOnSuccess(dn -> {
-                    // Si la DN rechazada era la activa, limpiar de sesión
-                    String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
+                .flatMap(dn -> {
+                    // Si la DN rechazada era la activa, deja de estarlo
                     if (dn.getId().equals(activeDeathNoteId)) {
-                        session.getAttributes().remove("ACTIVE_DEATH_NOTE_ID");
                         log.info("Death Note activa {} removida de sesión debido a rechazo de propiedad.", activeDeathNoteId);
+                        return activeDeathNoteStore.clear(exchange).thenReturn(dn);
                     }
+                    return Mono.just(dn);
                 })
                 .thenReturn("redirect:/?success=" + encodeURL("Propiedad de Death Note rechazada.")) // Redirigir a la selección
                 .onErrorResume(e -> Mono.just("redirect:/?error=" + encodeURL("Error al rechazar propiedad: " + e.getMessage())));
     }
 
+    private <T> Mono<T> timeStage(String stage, Mono<T> stageMono) {
+        return observeStage(stage, stageMono, value -> "success");
+    }
+
+    /**
+     * Observa una etapa del alta desde la suscripción hasta que termina: registra el timer
+     * {@code deathnote.person.write} con su etapa y resultado y abre un span hijo de la observación
+     * que viaja en el contexto de Reactor (la petición HTTP o la etapa que la contiene).
+     */
+    private <T> Mono<T> observeStage(String stage, Mono<T> stageMono, Function<T, String> outcomeOf) {
+        return Mono.deferContextual(context -> {
+            Observation observation = Observation.createNotStarted(WRITE_OBSERVATION, observationRegistry)
+                    .contextualName("person-write " + stage)
+                    .lowCardinalityKeyValue("stage", stage)
+                    .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+                    .start();
+            return stageMono
+                    .doOnNext(value -> observation.lowCardinalityKeyValue("outcome", outcomeOf.apply(value)))
+                    .doOnError(observation::error)
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            observation.lowCardinalityKeyValue("outcome", signal == SignalType.ON_ERROR ? "error" : "cancelled");
+                        } else if (observation.getContext().getLowCardinalityKeyValue("outcome") == null) {
+                            observation.lowCardinalityKeyValue("outcome", "success");
+                        }
+                        observation.stop();
+                    })
+                    .contextWrite(upstream -> upstream.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
     private String encodeURL(String value) {
         try {
             return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
@@ -346,13 +405,12 @@ public class PersonController {
     }
 
     @GetMapping("/persons/details/{id}")
-    public Mono<String> showDeathDetailsForm(@PathVariable String id, Model model, WebSession session) {
-        String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
+    public Mono<String> showDeathDetailsForm(@PathVariable String id, Model model, @ActiveDeathNote String activeDeathNoteId) {
         if (activeDeathNoteId == null) {
             log.warn("Intento de acceder a detalles de muerte sin DN activa. ID Persona: {}", id);
         }
 
-        log.info("Mostrando formulario de detalles de muerte para persona con ID: {}", id);
+        log.debug("Mostrando formulario de detalles de muerte para persona con ID: {}", id);
         return personService.findById(id)
                 .flatMap(person -> {
 
@@ -370,25 +428,19 @@ public class PersonController {
     @PostMapping("/persons/details/save")
     public Mono<String> saveDeathDetails(@ModelAttribute("person") Person personFromForm,
                                          BindingResult result,
-                                         Model model, WebSession session, SessionStatus sessionStatus,
+                                         Model model, @ActiveDeathNote String activeDeathNoteId, SessionStatus sessionStatus,
                                          ServerWebExchange exchange) {
 
         return exchange.getFormData().flatMap(formData -> {
             String explicitDeathDateStr = formData.getFirst("explicitDeathDateStr");
             String explicitDeathTimeStr = formData.getFirst("explicitDeathTimeStr");
 
-            log.info("--- INICIO DATOS FORMULARIO (ServerWebExchange) ---");
-            formData.forEach((key, values) -> {
-                log.info("FormData: Clave='{}', Valores='{}'", key, values);
-            });
-            log.info("Valor extraído para explicitDeathDateStr: '{}'", explicitDeathDateStr);
-            log.info("Valor extraído para explicitDeathTimeStr: '{}'", explicitDeathTimeStr);
-            log.info("--- FIN DATOS FORMULARIO ---");
-
-            String activeDeathNoteId = session.getAttribute("ACTIVE_DEATH_NOTE_ID");
-            log.info("Guardando detalles de muerte para Persona ID: {}", personFromForm.getId());
-            log.info("Datos recibidos (desde formData) - FechaStr: {}, HoraStr: {}, Detalles: {}, Causa: {}",
-                    explicitDeathDateStr, explicitDeathTimeStr, personFromForm.getDeathDetails(), personFromForm.getCauseOfDeath());
+            // El volcado del formulario recorre todos los campos: solo con DEBUG activo
+            if (log.isDebugEnabled()) {
+                formData.forEach((key, values) -> log.debug("FormData: Clave='{}', Valores='{}'", key, values));
+                log.debug("Guardando detalles de muerte para Persona ID: {}. FechaStr: {}, HoraStr: {}, Detalles: {}, Causa: {}",
+                        personFromForm.getId(), explicitDeathDateStr, explicitDeathTimeStr, personFromForm.getDeathDetails(), personFromForm.getCauseOfDeath());
+            }
 
             LocalDateTime finalDeathDateTime = null;
 
@@ -413,7 +465,7 @@ public class PersonController {
                 LocalDate datePart = LocalDate.parse(explicitDeathDateStr, DateTimeFormatter.ISO_LOCAL_DATE);
                 LocalTime timePart = LocalTime.parse(explicitDeathTimeStr, DateTimeFormatter.ISO_LOCAL_TIME);
                 finalDeathDateTime = LocalDateTime.of(datePart, timePart);
-                log.info("Fecha y hora de muerte combinadas: {}", finalDeathDateTime);
+                log.debug("Fecha y hora de muerte combinadas: {}", finalDeathDateTime);
             } catch (DateTimeParseException e) {
                 log.warn("Error al parsear fecha/hora: Date='{}', Time='{}' - Error: {}", explicitDeathDateStr, explicitDeathTimeStr, e.getMessage());
                 result.rejectValue("deathDate", "invalid.datetime", "Formato de fecha u hora inválido. Use yyyy-MM-dd y HH:mm.");
@@ -436,9 +488,12 @@ public class PersonController {
 
             // Si todo OK, proceder a guardar
             return personService.specifyDeath(personFromForm.getId(), finalDeathDateTime, personFromForm.getDeathDetails(), personFromForm.getCauseOfDeath())
-                    .doOnSuccess(updatedPerson -> {
-                        log.info("Detalles de muerte actualizados para {} (ID: {}).", updatedPerson.getName(), updatedPerson.getId());
-                    })
+                    .doOnSuccess(updatedPerson -> log.atInfo()
+                            .addMarker(SampledLogFilter.SAMPLED)
+                            .setMessage("Detalles de muerte actualizados")
+                            .addKeyValue("personId", updatedPerson.getId())
+                            .addKeyValue("status", updatedPerson.getStatus())
+                            .log())
                     .thenReturn("redirect:/listNames?success=" + encodeURL("Detalles de muerte actualizados para '" + personFromForm.getName() + "'."))
                     .onErrorResume(e -> {
                         log.error("Error al actualizar detalles de muerte para ID {}: {}", personFromForm.getId(), e.getMessage(), e);
@@ -0,0 +1,44 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
+import reactor.core.publisher.Flux;
+
+/**
+ * Página del listado que se va renderizando a medida que llegan las filas. El cursor de la página
+ * siguiente se calcula al pasar cada fila, así que solo es válido una vez recorrido el Flux
+ * (en la plantilla, después del bucle de filas).
+ */
+public class PersonListPage {
+
+    private final int size;
+    private volatile Person last;
+    private volatile int count;
+
+    public PersonListPage(int size) {
+        this.size = size;
+    }
+
+    public Flux<Person> track(Flux<Person> people) {
+        return people.doOnNext(person -> {
+            last = person;
+            count++;
+        });
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Cursor para pedir la página siguiente, o null si esta página no llegó a llenarse.
+     */
+    public String getNextCursor() {
+        Person lastPerson = last;
+        return count >= size && lastPerson != null ? PersonCursor.of(lastPerson).encode() : null;
+    }
+}
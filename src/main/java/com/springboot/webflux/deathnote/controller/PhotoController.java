@@ -0,0 +1,75 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.services.PhotoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sirve las fotos subidas y sus miniaturas ({@code ?size=64}, {@code ?size=256}).
+ * <p>
+ * El cuerpo es un {@link FileSystemResource}, así que WebFlux lo envía con zero-copy
+ * ({@code FileChannel.transferTo} sobre Netty) y responde a las peticiones Range con 206. Como el
+ * nombre es el hash del contenido (o un UUID en las fotos antiguas), el contenido de una URL no
+ * cambia: se marca como inmutable con caché de un año, y el ETag y Last-Modified permiten
+ * responder 304 a las peticiones condicionales.
+ */
+@RestController
+public class PhotoController {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoController.class);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+
+    private final PhotoService photoService;
+    private final Scheduler photoIoScheduler;
+
+    public PhotoController(PhotoService photoService, @Qualifier("photoIoScheduler") Scheduler photoIoScheduler) {
+        this.photoService = photoService;
+        this.photoIoScheduler = photoIoScheduler;
+    }
+
+    @GetMapping("/uploads/{filename:.+}")
+    public Mono<ResponseEntity<Resource>> servePhoto(@PathVariable String filename,
+                                                     @RequestParam(name = "size", required = false) Integer size) {
+        return photoService.resolve(filename, size)
+                // Si la miniatura no se puede generar (formato no soportado por ImageIO) se sirve el original
+                .onErrorResume(IOException.class, e -> {
+                    log.warn("Sin miniatura de {}px para {}: {}", size, filename, e.getMessage());
+                    return photoService.resolve(filename, null);
+                })
+                .flatMap(photoPath -> Mono.fromCallable(() -> Files.readAttributes(photoPath, BasicFileAttributes.class))
+                        // La consulta al sistema de ficheros es bloqueante
+                        .subscribeOn(photoIoScheduler)
+                        .map(attributes -> ResponseEntity.ok()
+                                .contentType(MediaTypeFactory.getMediaType(photoPath.getFileName().toString())
+                                        .orElse(MediaType.APPLICATION_OCTET_STREAM))
+                                .eTag(Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()))
+                                .lastModified(attributes.lastModifiedTime().toMillis())
+                                .cacheControl(IMMUTABLE)
+                                .<Resource>body(new FileSystemResource(photoPath))))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()))
+                .onErrorResume(IOException.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.debug("Foto no encontrada: {}", filename);
+                    return ResponseEntity.notFound().build();
+                }));
+    }
+}
@@ -0,0 +1,40 @@
+package com.springboot.webflux.deathnote.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Death Note activa de un visitante, indexada por el token opaco de su cookie. Mongo borra los
+ * documentos caducados con el índice TTL.
+ */
+@Document(collection = "active_death_notes")
+public class ActiveDeathNoteSession {
+
+    @Id
+    private String id;
+
+    private String deathNoteId;
+
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    private Date expiresAt;
+
+    public ActiveDeathNoteSession() {}
+
+    public ActiveDeathNoteSession(String id, String deathNoteId, Date expiresAt) {
+        this.id = id;
+        this.deathNoteId = deathNoteId;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getDeathNoteId() { return deathNoteId; }
+    public void setDeathNoteId(String deathNoteId) { this.deathNoteId = deathNoteId; }
+
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,56 @@
+package com.springboot.webflux.deathnote.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Evento de invalidación de caché publicado por un nodo. Se guarda en una colección capped que
+ * todos los nodos leen con un cursor tailable; una lista de claves vacía invalida la caché entera.
+ * {@code seq} lo asigna un contador en el servidor y es el que marca el orden entre nodos.
+ */
+@Document(collection = "cache_invalidations")
+public class CacheInvalidation {
+
+    @Id
+    private String id;
+
+    private long seq;
+
+    private String nodeId;
+
+    private String cache;
+
+    private List<String> keys;
+
+    private Date createdAt;
+
+    public CacheInvalidation() {}
+
+    public CacheInvalidation(String nodeId, String cache, List<String> keys, Date createdAt) {
+        this.nodeId = nodeId;
+        this.cache = cache;
+        this.keys = keys;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+    public String getCache() { return cache; }
+    public void setCache(String cache) { this.cache = cache; }
+
+    public List<String> getKeys() { return keys; }
+    public void setKeys(List<String> keys) { this.keys = keys; }
+
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+}
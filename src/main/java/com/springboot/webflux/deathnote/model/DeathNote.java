@@ -4,9 +4,6 @@ import jakarta.validation.constraints.NotBlank;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Document(collection = "death_note")
 public class DeathNote {
     @Id
@@ -17,7 +14,8 @@ public class DeathNote {
 
     private String ownerId;
 
-    private List<String> personIds = new ArrayList<>();
+    // Número de personas escritas; la pertenencia vive en Person.deathNoteId
+    private long personCount;
 
     public DeathNote() {}
 
@@ -50,15 +48,11 @@ public class DeathNote {
         this.ownerId = ownerId;
     }
 
-    public List<String> getPersonIds() {
-        return personIds;
-    }
-
-    public void setPersonIds(List<String> personIds) {
-        this.personIds = personIds;
+    public long getPersonCount() {
+        return personCount;
     }
 
-    public void addPersonId(String personId) {
-        this.personIds.add(personId);
+    public void setPersonCount(long personCount) {
+        this.personCount = personCount;
     }
 }
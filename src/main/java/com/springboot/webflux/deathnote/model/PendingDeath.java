@@ -0,0 +1,43 @@
+package com.springboot.webflux.deathnote.model;
+
+import com.springboot.webflux.deathnote.services.DeathSchedulerService;
+
+import java.time.LocalDateTime;
+
+/**
+ * Muerte pendiente de una persona: solo lo que el scheduler necesita para aplicar la transición.
+ */
+public class PendingDeath {
+
+    private final String id;
+    private final String status;
+    private final LocalDateTime scheduledDeathTime;
+
+    public PendingDeath(String id, String status, LocalDateTime scheduledDeathTime) {
+        this.id = id;
+        this.status = status;
+        this.scheduledDeathTime = scheduledDeathTime;
+    }
+
+    public static PendingDeath of(Person person) {
+        return new PendingDeath(person.getId(), person.getStatus(), person.getScheduledDeathTime());
+    }
+
+    public String getId() { return id; }
+
+    public String getStatus() { return status; }
+
+    public LocalDateTime getScheduledDeathTime() { return scheduledDeathTime; }
+
+    // Estado final tras la transición
+    public String getDeadStatus() {
+        return DeathSchedulerService.PENDING_HEART_ATTACK.equals(status)
+                ? DeathSchedulerService.DEAD_BY_SCHEDULER
+                : DeathSchedulerService.DEAD_DETAILS_SPECIFIED;
+    }
+
+    // Solo la muerte automática fija la causa; la explícita ya la trae desde specifyDeath
+    public String getCauseOfDeath() {
+        return DeathSchedulerService.PENDING_HEART_ATTACK.equals(status) ? "Ataque al Corazón (Automático por Scheduler)" : null;
+    }
+}
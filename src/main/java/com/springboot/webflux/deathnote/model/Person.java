@@ -2,12 +2,24 @@ package com.springboot.webflux.deathnote.model;
 
 import jakarta.validation.constraints.NotEmpty;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 @Document(collection="people")
+@CompoundIndexes({
+        // Listado paginado por (entryTime, _id), global o de una Death Note
+        @CompoundIndex(name = "entryTime_id", def = "{'entryTime': -1, '_id': -1}"),
+        @CompoundIndex(name = "deathNoteId_entryTime_id", def = "{'deathNoteId': 1, 'entryTime': -1, '_id': -1}"),
+        // Solo las muertes pendientes: cubre la proyección de PersonRepository#findPendingDeaths
+        @CompoundIndex(name = "pending_deaths", def = "{'alive': 1, 'scheduledDeathTime': 1, 'status': 1, '_id': 1}",
+                partialFilter = "{ 'alive': true, 'scheduledDeathTime': { $type: 'date' } }")
+})
 public class Person {
 
     @Id
@@ -16,12 +28,19 @@ public class Person {
     @NotEmpty
     private String name;
 
+    // Nombre en mayúsculas para los listados; lo calcula PersonDisplayNameCallback al guardar
+    private String displayName;
+
     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
     private LocalDateTime deathDate;
 
     private String deathDetails;
+    // Clave de la foto en el almacén por contenido (<sha256>.<ext>)
+    @Indexed(name = "facePhoto", sparse = true)
     private String facePhoto;
     private String deathNoteId;
+    // Death Note en cuyo personCount está contada; solo lo escriben DeathNoteRepository y DeathNoteMembershipMigration
+    private String countedDeathNoteId;
 
     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
     private LocalDateTime entryTime;
@@ -46,6 +65,27 @@ public class Person {
         this.entryTime = LocalDateTime.now();
     }
 
+    /**
+     * Copia de todos los campos, para que las lecturas cacheadas no compartan la misma instancia.
+     */
+    public Person copy() {
+        Person copy = new Person();
+        copy.id = id;
+        copy.name = name;
+        copy.displayName = displayName;
+        copy.deathDate = deathDate;
+        copy.deathDetails = deathDetails;
+        copy.facePhoto = facePhoto;
+        copy.deathNoteId = deathNoteId;
+        copy.countedDeathNoteId = countedDeathNoteId;
+        copy.entryTime = entryTime;
+        copy.scheduledDeathTime = scheduledDeathTime;
+        copy.status = status;
+        copy.causeOfDeath = causeOfDeath;
+        copy.alive = alive;
+        return copy;
+    }
+
     // Getters y Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -53,6 +93,13 @@ public class Person {
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
 
+    public String getDisplayName() { return displayName; }
+    public void setDisplayName(String displayName) { this.displayName = displayName; }
+
+    public static String toDisplayName(String name) {
+        return name != null ? name.toUpperCase(Locale.ROOT) : null;
+    }
+
     // Getter y Setter para la propiedad 'alive'
     public boolean isAlive() { // Este es el getter para la propiedad 'alive'
         return alive;
@@ -73,6 +120,9 @@ public class Person {
     public String getDeathNoteId() { return deathNoteId; }
     public void setDeathNoteId(String deathNoteId) { this.deathNoteId = deathNoteId; }
 
+    // Sin setter, para que no se pueda enlazar desde el formulario
+    public String getCountedDeathNoteId() { return countedDeathNoteId; }
+
     public LocalDateTime getEntryTime() { return entryTime; }
     public void setEntryTime(LocalDateTime entryTime) { this.entryTime = entryTime; }
 
@@ -0,0 +1,50 @@
+package com.springboot.webflux.deathnote.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posición en el listado de personas ordenado por (entryTime, _id) descendente. Se codifica en
+ * Base64 URL-safe para viajar como parámetro "after".
+ */
+public class PersonCursor {
+
+    private static final String NULL_ENTRY_TIME = "-";
+
+    private final LocalDateTime entryTime;
+    private final String id;
+
+    public PersonCursor(LocalDateTime entryTime, String id) {
+        this.entryTime = entryTime;
+        this.id = id;
+    }
+
+    public static PersonCursor of(Person person) {
+        return new PersonCursor(person.getEntryTime(), person.getId());
+    }
+
+    public LocalDateTime getEntryTime() { return entryTime; }
+
+    public String getId() { return id; }
+
+    public String encode() {
+        String raw = (entryTime != null ? entryTime.toString() : NULL_ENTRY_TIME) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PersonCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Cursor de paginación inválido: " + encoded);
+            }
+            String time = raw.substring(0, separator);
+            return new PersonCursor(NULL_ENTRY_TIME.equals(time) ? null : LocalDateTime.parse(time), raw.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido: " + encoded, e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.springboot.webflux.deathnote.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Número de personas que usan una foto del almacén por contenido. La clave es el nombre
+ * {@code <sha256>.<ext>} guardado en {@link Person#getFacePhoto()}.
+ * <p>
+ * Mientras {@code deletingSince} no es null, un nodo ha reclamado la foto para borrar sus ficheros y
+ * nadie puede sumarle referencias hasta que elimine el contador.
+ */
+@Document(collection = "photo_refs")
+public class PhotoRef {
+
+    @Id
+    private String id;
+
+    private long refs;
+
+    // Última vez que se sumó una referencia; el recolector no reclama fotos tocadas dentro del periodo de gracia
+    private Instant touchedAt;
+
+    private Instant deletingSince;
+
+    public PhotoRef() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public long getRefs() { return refs; }
+    public void setRefs(long refs) { this.refs = refs; }
+
+    public Instant getTouchedAt() { return touchedAt; }
+    public void setTouchedAt(Instant touchedAt) { this.touchedAt = touchedAt; }
+
+    public Instant getDeletingSince() { return deletingSince; }
+    public void setDeletingSince(Instant deletingSince) { this.deletingSince = deletingSince; }
+}
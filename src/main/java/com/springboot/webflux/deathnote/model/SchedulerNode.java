@@ -0,0 +1,34 @@
+package com.springboot.webflux.deathnote.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Lease de una instancia del scheduler. Cada nodo renueva su documento en cada latido; Mongo
+ * elimina los que vencen y los demás nodos dejan de contarlo como vivo.
+ */
+@Document(collection = "scheduler_nodes")
+public class SchedulerNode {
+
+    @Id
+    private String id;
+
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    private Date expiresAt;
+
+    public SchedulerNode() {}
+
+    public SchedulerNode(String id, Date expiresAt) {
+        this.id = id;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+}
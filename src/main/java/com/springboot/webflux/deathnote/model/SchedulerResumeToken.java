@@ -0,0 +1,38 @@
+package com.springboot.webflux.deathnote.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Último resume token del change stream de personas procesado por un nodo del scheduler.
+ */
+@Document(collection = "scheduler_resume_tokens")
+public class SchedulerResumeToken {
+
+    @Id
+    private String id;
+
+    // Valor del campo _data del token
+    private String data;
+
+    private Date updatedAt;
+
+    public SchedulerResumeToken() {}
+
+    public SchedulerResumeToken(String id, String data, Date updatedAt) {
+        this.id = id;
+        this.data = data;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getData() { return data; }
+    public void setData(String data) { this.data = data; }
+
+    public Date getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+}
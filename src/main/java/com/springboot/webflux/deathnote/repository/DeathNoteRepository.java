@@ -3,5 +3,5 @@ package com.springboot.webflux.deathnote.repository;
 import com.springboot.webflux.deathnote.model.DeathNote;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 
-public interface DeathNoteRepository extends ReactiveMongoRepository<DeathNote, String> {
+public interface DeathNoteRepository extends ReactiveMongoRepository<DeathNote, String>, DeathNoteRepositoryCustom {
 }
@@ -0,0 +1,40 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.DeathNote;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface DeathNoteRepositoryCustom {
+
+    /**
+     * Cuenta la persona en la Death Note, salvo que sea su propietario. Es idempotente: la persona
+     * guarda en qué Death Note está contada, y repetir la llamada (un reintento, un doble envío) no
+     * vuelve a sumar. Si estaba contada en otra Death Note se descuenta de ella. Devuelve la Death Note
+     * (actualizada si se contó), o vacío si la Death Note o la persona no existen o la persona es el propietario.
+     */
+    Mono<DeathNote> addPerson(String deathNoteId, String personId);
+
+    /**
+     * Cuenta de una vez personas recién guardadas que aún no están contadas en ninguna Death Note.
+     * Devuelve cuántas se contaron.
+     */
+    Mono<Long> addPeople(String deathNoteId, List<String> personIds);
+
+    /**
+     * Descuenta la persona de la Death Note en la que está contada, si lo está. Solo descuenta quien
+     * quita la marca, así que repetir la llamada no resta dos veces.
+     */
+    Mono<Void> removePerson(String personId);
+
+    /**
+     * Quita el propietario de la Death Note solo si sigue siendo {@code ownerId}. Toca únicamente ese
+     * campo, sin pisar el contador. Devuelve si se quitó.
+     */
+    Mono<Boolean> clearOwner(String deathNoteId, String ownerId);
+
+    /**
+     * Suma (o resta) personas al contador de la Death Note.
+     */
+    Mono<Void> incrementPersonCount(String deathNoteId, long delta);
+}
@@ -0,0 +1,97 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public class DeathNoteRepositoryCustomImpl implements DeathNoteRepositoryCustom {
+
+    private static final String COUNTED_DEATH_NOTE_ID = "countedDeathNoteId";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public DeathNoteRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<DeathNote> addPerson(String deathNoteId, String personId) {
+        // Regla: el propietario no puede escribir su propio nombre ($ne también acepta ownerId nulo)
+        Query note = Query.query(Criteria.where("_id").is(deathNoteId).and("ownerId").ne(personId));
+        // Primero se marca la persona: solo quien cambia la marca suma, así un reintento no cuenta dos veces
+        Query uncounted = Query.query(Criteria.where("_id").is(personId).and(COUNTED_DEATH_NOTE_ID).ne(deathNoteId));
+        uncounted.fields().include(COUNTED_DEATH_NOTE_ID);
+        return mongoTemplate.findAndModify(uncounted, Update.update(COUNTED_DEATH_NOTE_ID, deathNoteId), Person.class)
+                .flatMap(previous -> mongoTemplate.findAndModify(note, new Update().inc("personCount", 1),
+                                FindAndModifyOptions.options().returnNew(true), DeathNote.class)
+                        // Si estaba contada en otra Death Note, la marca ya no apunta allí: se descuenta
+                        .flatMap(counted -> leavePrevious(previous.getCountedDeathNoteId(), deathNoteId).thenReturn(counted))
+                        // El propietario (o una Death Note inexistente) no cuenta: se devuelve la marca anterior
+                        .switchIfEmpty(Mono.defer(() -> restoreCountedMark(personId, deathNoteId, previous.getCountedDeathNoteId())
+                                .then(Mono.empty()))))
+                // Ya estaba contada en esta Death Note; si la persona no existe se devuelve vacío
+                .switchIfEmpty(Mono.defer(() -> mongoTemplate.exists(countedIn(personId, deathNoteId), Person.class)
+                        .flatMap(counted -> counted ? mongoTemplate.findOne(note, DeathNote.class) : Mono.<DeathNote>empty())));
+    }
+
+    private Mono<Void> leavePrevious(String previousDeathNoteId, String deathNoteId) {
+        return previousDeathNoteId != null && !previousDeathNoteId.equals(deathNoteId)
+                ? incrementPersonCount(previousDeathNoteId, -1)
+                : Mono.empty();
+    }
+
+    private Mono<Void> restoreCountedMark(String personId, String deathNoteId, String previousDeathNoteId) {
+        Update restore = previousDeathNoteId != null
+                ? Update.update(COUNTED_DEATH_NOTE_ID, previousDeathNoteId)
+                : new Update().unset(COUNTED_DEATH_NOTE_ID);
+        return mongoTemplate.updateFirst(countedIn(personId, deathNoteId), restore, Person.class).then();
+    }
+
+    @Override
+    public Mono<Long> addPeople(String deathNoteId, List<String> personIds) {
+        if (personIds.isEmpty()) {
+            return Mono.just(0L);
+        }
+        // Igual que addPerson: se suman solo las que esta llamada marca
+        Query uncounted = Query.query(Criteria.where("_id").in(personIds).and(COUNTED_DEATH_NOTE_ID).exists(false));
+        return mongoTemplate.updateMulti(uncounted, Update.update(COUNTED_DEATH_NOTE_ID, deathNoteId), Person.class)
+                .map(UpdateResult::getModifiedCount)
+                .flatMap(marked -> marked > 0
+                        ? incrementPersonCount(deathNoteId, marked).thenReturn(marked)
+                        : Mono.just(marked));
+    }
+
+    @Override
+    public Mono<Void> removePerson(String personId) {
+        Query counted = Query.query(Criteria.where("_id").is(personId).and(COUNTED_DEATH_NOTE_ID).exists(true));
+        counted.fields().include(COUNTED_DEATH_NOTE_ID);
+        return mongoTemplate.findAndModify(counted, new Update().unset(COUNTED_DEATH_NOTE_ID), Person.class)
+                .filter(previous -> previous.getCountedDeathNoteId() != null)
+                .flatMap(previous -> incrementPersonCount(previous.getCountedDeathNoteId(), -1));
+    }
+
+    @Override
+    public Mono<Boolean> clearOwner(String deathNoteId, String ownerId) {
+        Query owned = Query.query(Criteria.where("_id").is(deathNoteId).and("ownerId").is(ownerId));
+        return mongoTemplate.updateFirst(owned, new Update().unset("ownerId"), DeathNote.class)
+                .map(result -> result.getModifiedCount() > 0);
+    }
+
+    @Override
+    public Mono<Void> incrementPersonCount(String deathNoteId, long delta) {
+        Query query = Query.query(Criteria.where("_id").is(deathNoteId));
+        return mongoTemplate.updateFirst(query, new Update().inc("personCount", delta), DeathNote.class).then();
+    }
+
+    private static Query countedIn(String personId, String deathNoteId) {
+        return Query.query(Criteria.where("_id").is(personId).and(COUNTED_DEATH_NOTE_ID).is(deathNoteId));
+    }
+}
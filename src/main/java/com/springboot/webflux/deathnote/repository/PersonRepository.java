@@ -1,11 +1,28 @@
 package com.springboot.webflux.deathnote.repository;
 
+import com.springboot.webflux.deathnote.model.PendingDeath;
 import com.springboot.webflux.deathnote.model.Person;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
-import java.time.LocalDateTime; // Importar LocalDateTime
+import reactor.core.publisher.Mono;
+import java.util.Collection;
 
-public interface PersonRepository extends ReactiveMongoRepository<Person, String> {
+public interface PersonRepository extends ReactiveMongoRepository<Person, String>, PersonRepositoryCustom {
 
-    Flux<Person> findAllByStatusAndScheduledDeathTimeBeforeAndAlive(String status, LocalDateTime scheduledTime, boolean alive);
+    /**
+     * Muertes pendientes, resueltas sobre el índice parcial 'pending_deaths' y proyectadas a los
+     * campos que necesita la transición, para no deserializar el historial de muertos.
+     */
+    @Query(value = "{ 'alive': true, 'scheduledDeathTime': { $type: 'date' } }",
+            fields = "{ '_id': 1, 'status': 1, 'scheduledDeathTime': 1 }")
+    Flux<PendingDeath> findPendingDeaths();
+
+    Mono<Long> countByFacePhoto(String facePhoto);
+
+    /**
+     * Personas que usan alguna de las fotos dadas, proyectadas a facePhoto (índice 'facePhoto').
+     */
+    @Query(value = "{ 'facePhoto': { $in: ?0 } }", fields = "{ 'facePhoto': 1 }")
+    Flux<Person> findFacePhotosIn(Collection<String> facePhotos);
 }
\ No newline at end of file
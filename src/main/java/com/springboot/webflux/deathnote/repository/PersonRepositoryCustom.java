@@ -0,0 +1,29 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.PendingDeath;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface PersonRepositoryCustom {
+
+    /**
+     * Marca como muertas, en una sola operación bulk, las personas del lote que sigan pendientes
+     * con el mismo estado y hora programada. Devuelve cuántos documentos se modificaron.
+     */
+    Mono<Integer> markDead(List<PendingDeath> batch);
+
+    /**
+     * Cambia la foto de todas las personas que usan {@code from} por {@code to}. Devuelve cuántas cambiaron.
+     */
+    Mono<Long> replaceFacePhoto(String from, String to);
+
+    /**
+     * Página del listado ordenada por (entryTime, _id) descendente, empezando después de {@code after}.
+     * Los filtros nulos no se aplican.
+     */
+    Flux<Person> findPage(String deathNoteId, Boolean alive, String status, PersonCursor after, int size);
+}
@@ -0,0 +1,95 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.webflux.deathnote.model.PendingDeath;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public class PersonRepositoryCustomImpl implements PersonRepositoryCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public PersonRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Integer> markDead(List<PendingDeath> batch) {
+        if (batch.isEmpty()) {
+            return Mono.just(0);
+        }
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, Person.class);
+        for (PendingDeath pending : batch) {
+            // El filtro hace la transición idempotente: si la persona fue borrada, reprogramada
+            // o ya transicionada, la operación no modifica nada.
+            Query query = Query.query(Criteria.where("_id").is(pending.getId())
+                    .and("alive").is(true)
+                    .and("status").is(pending.getStatus())
+                    .and("scheduledDeathTime").is(pending.getScheduledDeathTime()));
+            Update update = new Update()
+                    .set("alive", false)
+                    .set("status", pending.getDeadStatus())
+                    .set("deathDate", pending.getScheduledDeathTime())
+                    .set("scheduledDeathTime", null);
+            if (pending.getCauseOfDeath() != null) {
+                update.set("causeOfDeath", pending.getCauseOfDeath());
+            }
+            bulk.updateOne(query, update);
+        }
+        return bulk.execute().map(BulkWriteResult::getModifiedCount);
+    }
+
+    @Override
+    public Mono<Long> replaceFacePhoto(String from, String to) {
+        return mongoTemplate.updateMulti(Query.query(Criteria.where("facePhoto").is(from)), Update.update("facePhoto", to), Person.class)
+                .map(UpdateResult::getModifiedCount);
+    }
+
+    @Override
+    public Flux<Person> findPage(String deathNoteId, Boolean alive, String status, PersonCursor after, int size) {
+        Criteria criteria = new Criteria();
+        if (deathNoteId != null) {
+            criteria.and("deathNoteId").is(deathNoteId);
+        }
+        if (alive != null) {
+            criteria.and("alive").is(alive);
+        }
+        if (status != null) {
+            criteria.and("status").is(status);
+        }
+        if (after != null) {
+            criteria.andOperator(afterCursor(after));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "entryTime", "_id"))
+                .limit(size);
+        return mongoTemplate.find(query, Person.class);
+    }
+
+    /**
+     * Filas posteriores al cursor en orden descendente. Las personas sin entryTime van al final.
+     */
+    private static Criteria afterCursor(PersonCursor after) {
+        Object id = ObjectId.isValid(after.getId()) ? new ObjectId(after.getId()) : after.getId();
+        if (after.getEntryTime() == null) {
+            return new Criteria().and("entryTime").is(null).and("_id").lt(id);
+        }
+        return new Criteria().orOperator(
+                Criteria.where("entryTime").lt(after.getEntryTime()),
+                Criteria.where("entryTime").is(after.getEntryTime()).and("_id").lt(id),
+                Criteria.where("entryTime").is(null));
+    }
+}
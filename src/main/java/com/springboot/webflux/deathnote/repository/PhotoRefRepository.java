@@ -0,0 +1,7 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.PhotoRef;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface PhotoRefRepository extends ReactiveMongoRepository<PhotoRef, String>, PhotoRefRepositoryCustom {
+}
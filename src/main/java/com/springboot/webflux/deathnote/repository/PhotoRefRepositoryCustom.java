@@ -0,0 +1,43 @@
+package com.springboot.webflux.deathnote.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public interface PhotoRefRepositoryCustom {
+
+    /**
+     * Suma {@code delta} a las referencias de la foto (creando el contador si no existe) y devuelve el
+     * total. Falla con {@link org.springframework.dao.DuplicateKeyException} si la foto está reclamada
+     * para borrarse; al terminar el borrado se puede reintentar.
+     */
+    Mono<Long> addReferences(String key, long delta);
+
+    /**
+     * Resta una referencia aunque la foto esté reclamada y devuelve el total, o vacío si no hay contador.
+     */
+    Mono<Long> removeReference(String key);
+
+    /**
+     * Reclama la foto para borrarla si ya no le quedan referencias y nadie la ha reclamado. Devuelve
+     * true si la reclamó este nodo: solo entonces se pueden borrar los ficheros.
+     */
+    Mono<Boolean> claimUnreferenced(String key);
+
+    /**
+     * Reclama una foto que ninguna persona usa, tenga o no contador, si no se le ha sumado una
+     * referencia después de {@code touchedBefore}. Devuelve true si la reclamó este nodo.
+     */
+    Mono<Boolean> claimOrphan(String key, Instant touchedBefore);
+
+    /**
+     * Suelta la reclamación sin borrar el contador, cuando al final no se borran los ficheros. El
+     * contador queda en al menos {@code minRefs}, para corregirlo si había personas sin contar.
+     */
+    Mono<Void> unclaim(String key, long minRefs);
+
+    /**
+     * Elimina el contador de una foto reclamada una vez borrados sus ficheros.
+     */
+    Mono<Void> removeClaimed(String key);
+}
@@ -0,0 +1,92 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.PhotoRef;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Las transiciones del contador son atómicas en Mongo: sumar una referencia solo casa con fotos no
+ * reclamadas, y reclamar solo casa con fotos sin reclamar, así que entre varios nodos solo uno llega
+ * a borrar los ficheros y ninguna subida reutiliza una foto que se está borrando. Cuando el filtro no
+ * casa, el upsert choca con el _id existente y se devuelve DuplicateKeyException.
+ */
+public class PhotoRefRepositoryCustomImpl implements PhotoRefRepositoryCustom {
+
+    // Una reclamación más antigua se da por abandonada (el nodo cayó a mitad del borrado)
+    static final Duration CLAIM_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String REFS = "refs";
+    private static final String TOUCHED_AT = "touchedAt";
+    private static final String DELETING_SINCE = "deletingSince";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public PhotoRefRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Long> addReferences(String key, long delta) {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("_id").is(key).andOperator(notClaimed(now)));
+        Update update = new Update().inc(REFS, delta).set(TOUCHED_AT, now).unset(DELETING_SINCE);
+        return mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), PhotoRef.class)
+                .map(PhotoRef::getRefs);
+    }
+
+    @Override
+    public Mono<Long> removeReference(String key) {
+        Query query = Query.query(Criteria.where("_id").is(key));
+        return mongoTemplate.findAndModify(query, new Update().inc(REFS, -1),
+                        FindAndModifyOptions.options().returnNew(true), PhotoRef.class)
+                .map(PhotoRef::getRefs);
+    }
+
+    @Override
+    public Mono<Boolean> claimUnreferenced(String key) {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("_id").is(key).and(REFS).lte(0).andOperator(notClaimed(now)));
+        return mongoTemplate.findAndModify(query, Update.update(DELETING_SINCE, now), PhotoRef.class)
+                .hasElement();
+    }
+
+    @Override
+    public Mono<Boolean> claimOrphan(String key, Instant touchedBefore) {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("_id").is(key).andOperator(
+                notClaimed(now),
+                new Criteria().orOperator(Criteria.where(TOUCHED_AT).is(null), Criteria.where(TOUCHED_AT).lt(touchedBefore))));
+        // Con upsert también se reclaman los ficheros que se quedaron sin contador
+        return mongoTemplate.findAndModify(query, Update.update(DELETING_SINCE, now),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), PhotoRef.class)
+                .hasElement()
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false));
+    }
+
+    @Override
+    public Mono<Void> unclaim(String key, long minRefs) {
+        Query query = Query.query(Criteria.where("_id").is(key));
+        return mongoTemplate.updateFirst(query, new Update().max(REFS, minRefs).unset(DELETING_SINCE), PhotoRef.class).then();
+    }
+
+    @Override
+    public Mono<Void> removeClaimed(String key) {
+        Query query = Query.query(Criteria.where("_id").is(key).and(DELETING_SINCE).ne(null));
+        return mongoTemplate.remove(query, PhotoRef.class).then();
+    }
+
+    private static Criteria notClaimed(Instant now) {
+        return new Criteria().orOperator(
+                Criteria.where(DELETING_SINCE).is(null),
+                Criteria.where(DELETING_SINCE).lt(now.minus(CLAIM_TIMEOUT)));
+    }
+}
@@ -0,0 +1,12 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.SchedulerNode;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.util.Date;
+
+public interface SchedulerNodeRepository extends ReactiveMongoRepository<SchedulerNode, String> {
+
+    Flux<SchedulerNode> findAllByExpiresAtAfterOrderByIdAsc(Date now);
+}
@@ -0,0 +1,7 @@
+package com.springboot.webflux.deathnote.repository;
+
+import com.springboot.webflux.deathnote.model.SchedulerResumeToken;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface SchedulerResumeTokenRepository extends ReactiveMongoRepository<SchedulerResumeToken, String> {
+}
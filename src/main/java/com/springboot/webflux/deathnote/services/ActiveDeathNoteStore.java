@@ -0,0 +1,25 @@
+package com.springboot.webflux.deathnote.services;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Guarda la Death Note activa de cada visitante, el único estado por usuario de la aplicación. La
+ * implementación se elige con deathnote.session.store:
+ * <ul>
+ *     <li>{@code memory} (por defecto): atributo de la {@code WebSession} en memoria del nodo.</li>
+ *     <li>{@code cookie}: cookie firmada con HMAC; el servidor no guarda nada.</li>
+ *     <li>{@code mongo}: documento con índice TTL, compartido por todas las réplicas.</li>
+ * </ul>
+ */
+public interface ActiveDeathNoteStore {
+
+    /**
+     * Id de la Death Note activa, o vacío si no hay ninguna (o la guardada caducó o no es válida).
+     */
+    Mono<String> get(ServerWebExchange exchange);
+
+    Mono<Void> set(ServerWebExchange exchange, String deathNoteId);
+
+    Mono<Void> clear(ServerWebExchange exchange);
+}
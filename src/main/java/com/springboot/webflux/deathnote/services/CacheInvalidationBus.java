@@ -0,0 +1,268 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.mongodb.MongoCommandException;
+import com.springboot.webflux.deathnote.model.CacheInvalidation;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Propaga las invalidaciones de caché entre réplicas. Cada escritura invalida primero la caché
+ * local y después inserta un evento pequeño (caché y claves) en la colección capped
+ * {@code cache_invalidations}; todos los nodos la siguen con un cursor tailable, que Mongo
+ * entrega en cuanto se inserta el documento, y aplican los eventos de los demás nodos.
+ * <p>
+ * Cada evento lleva un {@code seq} que asigna un contador atómico en el servidor, así que el orden no
+ * depende de fechas ni de ObjectIds generados con el reloj de cada nodo. El seq se reserva antes de
+ * insertar, así que dos nodos pueden insertar fuera de orden: al reabrir el cursor se relee una
+ * ventana de seqs por debajo del último leído y se descartan los ya aplicados. Si el evento más
+ * antiguo que queda es posterior al siguiente que tocaba, la colección capped ya ha sobrescrito
+ * alguno y se vacían las cachés.
+ * Funciona sin replica set; se activa con deathnote.cache.bus.enabled.
+ */
+@Service
+public class CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final String LOG_PREFIX = "CACHE-BUS: ";
+
+    // Código de Mongo cuando otro nodo ya creó la colección
+    private static final int NAMESPACE_EXISTS = 48;
+
+    private static final String SEQ = "seq";
+
+    private static final String SEQ_COLLECTION = "cache_invalidation_seq";
+
+    private static final String SEQ_ID = "cache_invalidations";
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private SchedulerMembershipService membershipService;
+
+    @Autowired
+    private ReactiveCache<String, Person> personCache;
+
+    @Autowired
+    private ReactiveCache<String, List<DeathNote>> deathNoteListCache;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${deathnote.cache.bus.enabled:false}")
+    private boolean enabled;
+
+    @Value("${deathnote.cache.bus.capped-size:1MB}")
+    private DataSize cappedSize;
+
+    @Value("${deathnote.cache.bus.capped-max-documents:10000}")
+    private long cappedMaxDocuments;
+
+    // Cuántos seqs por debajo del último leído se releen al reabrir el cursor
+    @Value("${deathnote.cache.bus.resume-window:100}")
+    private long resumeWindow;
+
+    private Map<String, ReactiveCache<String, ?>> caches;
+
+    private Timer deliveryLag;
+
+    // Último seq leído; 0 mientras no se haya publicado nada
+    private final AtomicLong lastSeq = new AtomicLong();
+
+    // Seqs aplicados dentro de la ventana de relectura
+    private final NavigableSet<Long> appliedSeqs = new ConcurrentSkipListSet<>();
+
+    private Disposable subscription;
+
+    @PostConstruct
+    public void registerCaches() {
+        caches = Map.of(personCache.getName(), personCache, deathNoteListCache.getName(), deathNoteListCache);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            deliveryLag = Timer.builder("deathnote.cache.invalidation.lag")
+                    .description("Tiempo entre la publicación de una invalidación y su aplicación en otro nodo")
+                    .register(registry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Invalida las claves en este nodo y lo publica para los demás.
+     */
+    public void invalidate(ReactiveCache<String, ?> cache, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        cache.invalidateAll(keys);
+        publish(cache, List.copyOf(keys));
+    }
+
+    public void invalidate(ReactiveCache<String, ?> cache, String key) {
+        if (key != null) {
+            invalidate(cache, List.of(key));
+        }
+    }
+
+    /**
+     * Vacía la caché en este nodo y en los demás.
+     */
+    public void invalidateAll(ReactiveCache<String, ?> cache) {
+        cache.invalidateAll();
+        publish(cache, List.of());
+    }
+
+    private void publish(ReactiveCache<String, ?> cache, List<String> keys) {
+        if (!enabled || !cache.isEnabled()) {
+            return;
+        }
+        CacheInvalidation event = new CacheInvalidation(membershipService.getNodeId(), cache.getName(), keys, new Date());
+        nextSeq()
+                .flatMap(seq -> {
+                    event.setSeq(seq);
+                    return mongoTemplate.insert(event);
+                })
+                .subscribe(saved -> { }, error ->
+                        // Los demás nodos verán el dato como mucho con el TTL de la caché de retraso
+                        log.warn("{}No se pudo publicar la invalidación de {} {}: {}", LOG_PREFIX, cache.getName(), keys, error.getMessage()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        subscription = createCappedCollection()
+                .then(skipExistingEvents())
+                .thenMany(Flux.defer(this::tail)
+                        // Un cursor tailable muere si la colección está vacía: se reabre tras una pausa
+                        .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1))))
+                .doOnError(error -> log.error("{}ERROR leyendo invalidaciones, reintentando: {}", LOG_PREFIX, error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::apply);
+        log.info("{}Bus de invalidación activo para el nodo {}.", LOG_PREFIX, membershipService.getNodeId());
+    }
+
+    private Mono<Void> createCappedCollection() {
+        return mongoTemplate.collectionExists(CacheInvalidation.class)
+                .flatMap(exists -> exists
+                        ? Mono.<Void>empty()
+                        : mongoTemplate.createCollection(CacheInvalidation.class, CollectionOptions.empty()
+                                .capped()
+                                .size(cappedSize.toBytes())
+                                .maxDocuments(cappedMaxDocuments))
+                        .then())
+                .onErrorResume(error -> error instanceof MongoCommandException commandException
+                        && commandException.getErrorCode() == NAMESPACE_EXISTS, error -> Mono.empty());
+    }
+
+    /**
+     * Siguiente {@code seq}, incrementado en el servidor para que sea único y ordenado entre nodos.
+     */
+    Mono<Long> nextSeq() {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(SEQ_ID)), new Update().inc(SEQ, 1),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, SEQ_COLLECTION)
+                .map(counter -> counter.get(SEQ, Number.class).longValue());
+    }
+
+    /**
+     * Los eventos publicados antes de arrancar no afectan a cachés que aún están vacías.
+     */
+    private Mono<Void> skipExistingEvents() {
+        return mongoTemplate.findById(SEQ_ID, Document.class, SEQ_COLLECTION)
+                .doOnNext(counter -> lastSeq.set(counter.get(SEQ, Number.class).longValue()))
+                .then();
+    }
+
+    Flux<CacheInvalidation> tail() {
+        long resumeAfter = lastSeq.get();
+        Query oldest = new Query().with(Sort.by(Sort.Direction.ASC, SEQ)).limit(1);
+        oldest.fields().include(SEQ);
+        return mongoTemplate.findOne(oldest, CacheInvalidation.class)
+                .doOnNext(event -> {
+                    if (event.getSeq() > resumeAfter + 1) {
+                        log.warn("{}Se han sobrescrito invalidaciones sin leer (seq {} a {}); se vacían las cachés.",
+                                LOG_PREFIX, resumeAfter + 1, event.getSeq() - 1);
+                        caches.values().forEach(ReactiveCache::invalidateAll);
+                    }
+                })
+                // Un cursor tailable recorre la colección capped en orden de inserción desde el más antiguo.
+                // Se relee la ventana para recoger los seqs bajos que se insertaron después de leer uno mayor.
+                .thenMany(Flux.defer(() -> mongoTemplate.tail(
+                        Query.query(Criteria.where(SEQ).gt(Math.max(0, resumeAfter - resumeWindow))), CacheInvalidation.class)));
+    }
+
+    void apply(CacheInvalidation event) {
+        if (event.getSeq() > 0) {
+            if (!appliedSeqs.add(event.getSeq())) {
+                // Releído al reabrir el cursor
+                return;
+            }
+            // Dos nodos pueden insertar fuera de orden: nunca se retrocede
+            long last = lastSeq.accumulateAndGet(event.getSeq(), Math::max);
+            appliedSeqs.headSet(last - resumeWindow, true).clear();
+        }
+        if (membershipService.getNodeId().equals(event.getNodeId())) {
+            return;
+        }
+        ReactiveCache<String, ?> cache = caches.get(event.getCache());
+        if (cache == null) {
+            log.debug("{}Invalidación de una caché desconocida: {}", LOG_PREFIX, event.getCache());
+            return;
+        }
+        if (event.getKeys() == null || event.getKeys().isEmpty()) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateAll(event.getKeys());
+        }
+        if (deliveryLag != null && event.getCreatedAt() != null) {
+            deliveryLag.record(Math.max(0, System.currentTimeMillis() - event.getCreatedAt().getTime()), TimeUnit.MILLISECONDS);
+        }
+        log.debug("{}Invalidación de {} aplicada desde el nodo {}: {}", LOG_PREFIX, event.getCache(), event.getNodeId(), event.getKeys());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
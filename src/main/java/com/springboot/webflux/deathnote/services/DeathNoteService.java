@@ -4,11 +4,20 @@ import com.springboot.webflux.deathnote.model.DeathNote;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public interface DeathNoteService {
     Mono<DeathNote> writePersonInDeathNote(String deathNoteId, String personId, String deathDetails,
                                            LocalDateTime deathDate, String photo);
 
+    // Descuenta la persona de la Death Note en la que estaba contada, si lo estaba
+    Mono<Void> removePersonFromDeathNote(String personId);
+
+    // Cuenta de una vez un lote de personas ya guardadas con este deathNoteId
+    Mono<Void> addPeopleToDeathNote(String deathNoteId, List<String> personIds);
+
+    Mono<DeathNote> findById(String deathNoteId);
+
     Mono<Void> delete(DeathNote deathNote);
     Mono<DeathNote> rejectOwnership(String deathNoteId);
     Mono<DeathNote> initializeDeathNote(String shinigamiId, String ownerId);
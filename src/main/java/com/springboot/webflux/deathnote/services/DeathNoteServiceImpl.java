@@ -13,6 +13,7 @@ import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.List;
 
 @Service
 public class DeathNoteServiceImpl implements DeathNoteService {
@@ -21,10 +22,20 @@ public class DeathNoteServiceImpl implements DeathNoteService {
     private DeathNoteRepository deathNoteRepository;
 
     @Autowired
-    private PersonService personService;
+    private OwnerService ownerService;
 
+    // La pantalla de selección lee todas las Death Notes en cada petición
     @Autowired
-    private OwnerService ownerService;
+    private ReactiveCache<String, List<DeathNote>> deathNoteListCache;
+
+    // La marca countedDeathNoteId de la persona cambia con findAndModify, sin eventos de guardado
+    @Autowired
+    private ReactiveCache<String, Person> personCache;
+
+    @Autowired
+    private CacheInvalidationBus invalidationBus;
+
+    private static final String ALL_DEATH_NOTES = "all";
 
     private static final Logger log = LoggerFactory.getLogger(PersonServiceImpl.class);
 
@@ -36,61 +47,51 @@ public class DeathNoteServiceImpl implements DeathNoteService {
     @Override
     public Mono<DeathNote> writePersonInDeathNote(String deathNoteId, String personId, String deathDetailsFromPerson,
                                                   LocalDateTime scheduledDeathTimeFromPerson, String photoNameFromPerson) {
-        return Mono.zip(
-                        deathNoteRepository.findById(deathNoteId),
-                        personService.findById(personId) // Este 'person' ya fue procesado por saveInitialEntry
-                )
-                .flatMap(tuple -> {
-                    DeathNote deathNote = tuple.getT1();
-                    Person person = tuple.getT2(); // person ya tiene su estado y foto (si la hubo)
-
-                    // Regla: Propietario no puede escribir su propio nombre
-                    if (deathNote.getOwnerId() != null && deathNote.getOwnerId().equals(personId)) {
-                        return Mono.error(new IllegalStateException("El propietario no puede escribir su propio nombre"));
-                    }
-
-                    // La validación estricta de la foto se elimina de aquí.
-                    // La lógica de si la persona muere o no ya fue manejada en PersonServiceImpl.saveInitialEntry.
-                    // Este método ahora se enfoca en actualizar la DeathNote y, si acaso,
-                    // detalles de muerte explícitos si vinieran de un formulario más avanzado.
-
-                    log.info("Escribiendo a {} (ID: {}) en DeathNote {} (ID: {}). Detalles provistos: '{}', Muerte programada: '{}', Foto: '{}'",
-                            person.getName(), person.getId(), deathNote.getId(), deathNote.getId(), deathDetailsFromPerson, scheduledDeathTimeFromPerson, photoNameFromPerson);
-
-
-                    // Aquí podrías manejar la actualización de 'person.setDeathDetails' o 'person.setDeathDate'
-                    // si el formulario de anotación permitiera especificar causa y momento exacto de la muerte,
-                    // lo cual sobrescribiría la muerte por defecto de 40s.
-                    // Por ahora, asumimos que 'deathDetailsFromPerson' y 'scheduledDeathTimeFromPerson'
-                    // son los que 'saveInitialEntry' estableció.
-
-                    // Si se proporcionaron detalles explícitos de muerte que deben aplicarse inmediatamente:
-                    boolean personModifiedInWrite = false;
-                    if (deathDetailsFromPerson != null && !deathDetailsFromPerson.equals(person.getDeathDetails())) {
-                        // Podrías querer actualizar person.setDeathDetails si el formulario permite especificarlo
-                        // y es diferente de lo que saveInitialEntry pudo haber puesto.
-                        // person.setDeathDetails(deathDetailsFromPerson);
-                        // personModifiedInWrite = true;
-                    }
-                    // Similar para una deathDate explícita que no sea la programada.
-
-
-                    // Añadir el ID de la persona a la lista de la Death Note
-                    deathNote.addPersonId(personId);
+        // La persona ya fue guardada (con su deathNoteId y su muerte programada) por saveInitialEntry;
+        // aquí solo se cuenta en la Death Note con un único findAndModify, sin perder escrituras concurrentes.
+        return deathNoteRepository.addPerson(deathNoteId, personId)
+                // findAndModify no emite eventos de guardado: se invalida aquí
+                .doOnNext(deathNote -> {
+                    invalidationBus.invalidateAll(deathNoteListCache);
+                    invalidationBus.invalidate(personCache, personId);
+                })
+                .doOnNext(deathNote -> log.atDebug()
+                        .setMessage("Persona escrita en la Death Note")
+                        .addKeyValue("personId", personId)
+                        .addKeyValue("deathNoteId", deathNote.getId())
+                        .addKeyValue("deathDetails", deathDetailsFromPerson)
+                        .addKeyValue("scheduledDeathTime", scheduledDeathTimeFromPerson)
+                        .addKeyValue("photo", photoNameFromPerson)
+                        .log())
+                // Solo si no se actualizó nada se consulta la Death Note para dar el error correcto.
+                .switchIfEmpty(Mono.defer(() -> deathNoteRepository.findById(deathNoteId)
+                        .filter(deathNote -> personId.equals(deathNote.getOwnerId()))
+                        .flatMap(deathNote -> Mono.<DeathNote>error(new IllegalStateException("El propietario no puede escribir su propio nombre")))
+                        .switchIfEmpty(Mono.error(new NotFoundException("No se encontró DeathNote o Persona para escribir.")))));
+    }
 
-                    // Si 'person' se modificó en este método (ej. con detalles explícitos de muerte), guardarlo.
-                    // De lo contrario, 'person' ya fue guardado por saveInitialEntry.
-                    Mono<Person> savePersonIfNeededMono = Mono.just(person);
-                    if(personModifiedInWrite) {
-                        // savePersonIfNeededMono = personService.save(person);
-                    }
+    @Override
+    public Mono<Void> removePersonFromDeathNote(String personId) {
+        return deathNoteRepository.removePerson(personId)
+                .doOnSuccess(unused -> {
+                    invalidationBus.invalidateAll(deathNoteListCache);
+                    invalidationBus.invalidate(personCache, personId);
+                });
+    }
 
-                    // Solo se guarda la DeathNote ya que la persona ya se guardó en saveInitialEntry
-                    // a menos que se modifique explícitamente aquí.
-                    return deathNoteRepository.save(deathNote).map(dn -> person); // Devolvemos la persona para mantener el flujo del controlador
+    @Override
+    public Mono<Void> addPeopleToDeathNote(String deathNoteId, List<String> personIds) {
+        return deathNoteRepository.addPeople(deathNoteId, personIds)
+                .doOnSuccess(counted -> {
+                    invalidationBus.invalidateAll(deathNoteListCache);
+                    invalidationBus.invalidate(personCache, personIds);
                 })
-                .switchIfEmpty(Mono.error(new IllegalStateException("No se encontró DeathNote o Persona para escribir.")))
-                .flatMap(savedPerson -> deathNoteRepository.findById(deathNoteId)); // Aseguramos devolver la DeathNote actualizada
+                .then();
+    }
+
+    @Override
+    public Mono<DeathNote> findById(String deathNoteId) {
+        return deathNoteRepository.findById(deathNoteId);
     }
 
     @Override
@@ -105,11 +106,18 @@ public class DeathNoteServiceImpl implements DeathNoteService {
                         return Mono.error(new IllegalStateException("El owner recuperado no coincide con el de la Death Note o la DN no tiene owner."));
                     }
 
-                    deathNote.setOwnerId(null);
-                    owner.setDeathNoteId(null);
-
-                    return ownerService.save(owner)
-                            .then(deathNoteRepository.save(deathNote));
+                    // Solo se quita ownerId: guardar la Death Note leída pisaría los $inc de personCount hechos entretanto
+                    return deathNoteRepository.clearOwner(deathNoteId, owner.getId())
+                            .flatMap(cleared -> {
+                                if (!cleared) {
+                                    return Mono.error(new IllegalStateException("El owner recuperado no coincide con el de la Death Note o la DN no tiene owner."));
+                                }
+                                owner.setDeathNoteId(null);
+                                // La actualización parcial no emite AfterSaveEvent
+                                invalidationBus.invalidateAll(deathNoteListCache);
+                                return ownerService.save(owner)
+                                        .then(deathNoteRepository.findById(deathNoteId));
+                            });
                 });
     }
 
@@ -128,7 +136,8 @@ public class DeathNoteServiceImpl implements DeathNoteService {
 
     @Override
     public Flux<DeathNote> findAll() {
-        return deathNoteRepository.findAll();
+        return deathNoteListCache.get(ALL_DEATH_NOTES, key -> deathNoteRepository.findAll().collectList())
+                .flatMapIterable(deathNotes -> deathNotes);
     }
 
     @Override
@@ -1,66 +1,358 @@
 package com.springboot.webflux.deathnote.services;
 
+import com.springboot.webflux.deathnote.config.SampledLogFilter;
+import com.springboot.webflux.deathnote.model.PendingDeath;
 import com.springboot.webflux.deathnote.model.Person;
 import com.springboot.webflux.deathnote.repository.PersonRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Programa cada muerte pendiente en memoria (una cola de retardo por persona) en lugar de
+ * consultar la BD periódicamente. Los temporizadores se arman al anotar o especificar una
+ * muerte y se reconstruyen desde Mongo al arrancar; con la app inactiva no se hacen consultas.
+ * Las muertes vencidas se escriben en lotes con una única operación bulk por lote. Si la escritura
+ * sigue fallando tras los reintentos, las muertes del lote se rearman para volver a intentarlo más tarde.
+ * <p>
+ * Con varias réplicas, el nodo que escribe una muerte arma su temporizador, y al cambiar los nodos
+ * vivos cada uno reconstruye solo su partición (ver {@link SchedulerMembershipService}), de modo que
+ * las muertes de un nodo caído se recuperan. La actualización condicionada de
+ * {@code PersonRepository#markDead} garantiza que cada transición se aplique una sola vez.
+ * <p>
+ * Métricas: {@code deathnote.scheduler.pending} (temporizadores armados),
+ * {@code deathnote.scheduler.backlog} (muertes vencidas sin escribir), {@code deathnote.scheduler.lag}
+ * (retraso entre scheduledDeathTime y el procesamiento del lote, para cada muerte del lote aunque la
+ * escritura condicionada no la modificara), {@code deathnote.scheduler.batch.size},
+ * {@code deathnote.scheduler.transitions} y {@code deathnote.scheduler.errors}.
+ * Con el change stream activo ({@link PersonChangeStreamService}) todos los nodos ven todas las
+ * escrituras y cada uno arma solo las de su partición.
+ */
 @Service
 public class DeathSchedulerService {
 
     private static final Logger log = LoggerFactory.getLogger(DeathSchedulerService.class);
 
+    public static final String PENDING_HEART_ATTACK = "PENDING_HEART_ATTACK";
+    public static final String DEATH_SCHEDULED_EXPLICITLY = "DEATH_SCHEDULED_EXPLICITLY";
+    public static final List<String> PENDING_STATUSES = List.of(PENDING_HEART_ATTACK, DEATH_SCHEDULED_EXPLICITLY);
+    public static final String DEAD_BY_SCHEDULER = "DEAD_BY_SCHEDULER";
+    public static final String DEAD_DETAILS_SPECIFIED = "DEAD_DETAILS_SPECIFIED";
+
+    private static final String LOG_PREFIX = "SCHEDULER: ";
+
     @Autowired
     private PersonRepository personRepository;
 
-    // En DeathSchedulerService.java
-    @Scheduled(fixedDelayString = "${deathnote.scheduler.fixedDelay:PT5S}")
-    public void processPendingDeaths() { // Renombrado para ser más general
-        LocalDateTime currentTime = LocalDateTime.now();
-        String logPrefixScheduler = "SCHEDULER: ";
-
-        // 1. Procesar muertes automáticas por ataque al corazón (PENDING_HEART_ATTACK)
-        personRepository.findAllByStatusAndScheduledDeathTimeBeforeAndAlive("PENDING_HEART_ATTACK", currentTime, true)
-                .flatMap(person -> {
-                    log.info("{}Procesando (Ataque Corazón) a: {} (ID: {}). Muerte prog.: {}", logPrefixScheduler, person.getName(), person.getId(), person.getScheduledDeathTime());
-                    person.setAlive(false);
-                    person.setCauseOfDeath("Ataque al Corazón (Automático por Scheduler)"); // Si aún usas causeOfDeath
-                    person.setDeathDate(person.getScheduledDeathTime()); // Hora real de muerte
-                    person.setStatus("DEAD_BY_SCHEDULER"); // O simplemente "DEAD"
-                    person.setScheduledDeathTime(null); // Limpiar, ya no está programada
-                    log.info("{}Intentando actualizar a {} como DEAD_BY_SCHEDULER. Fecha muerte: {}", logPrefixScheduler, person.getName(), person.getDeathDate());
-                    return personRepository.save(person)
-                            .doOnSuccess(savedPerson -> log.info("{}{} (ID: {}) GUARDADA como DEAD_BY_SCHEDULER.", logPrefixScheduler, savedPerson.getName(), savedPerson.getId()))
-                            .doOnError(saveError -> log.error("{}ERROR al guardar a {} como DEAD_BY_SCHEDULER: {}", logPrefixScheduler, person.getName(), saveError.getMessage()));
-                })
-                .subscribe(
-                        updatedPerson -> log.debug("{}Ciclo (Ataque Corazón) para {} finalizado.", logPrefixScheduler, updatedPerson.getName()),
-                        error -> log.error("{}ERROR general en scheduler (Ataque Corazón).", logPrefixScheduler, error)
-                );
-
-        // 2. Procesar muertes explícitamente programadas (DEATH_SCHEDULED_EXPLICITLY)
-        personRepository.findAllByStatusAndScheduledDeathTimeBeforeAndAlive("DEATH_SCHEDULED_EXPLICITLY", currentTime, true)
-                .flatMap(person -> {
-                    log.info("{}Procesando (Muerte Explícita) a: {} (ID: {}). Muerte especificada: {}", logPrefixScheduler, person.getName(), person.getId(), person.getScheduledDeathTime());
-                    person.setAlive(false);
-                    // person.setCauseOfDeath(person.getCauseOfDeath()); // Ya debería estar seteada desde specifyDeath
-                    person.setDeathDate(person.getScheduledDeathTime()); // Hora real de muerte
-                    person.setStatus("DEAD_DETAILS_SPECIFIED"); // O simplemente "DEAD"
-                    person.setScheduledDeathTime(null); // Limpiar, ya no está programada
-                    log.info("{}Intentando actualizar a {} como DEAD_DETAILS_SPECIFIED. Fecha muerte: {}", logPrefixScheduler, person.getName(), person.getDeathDate());
-                    return personRepository.save(person)
-                            .doOnSuccess(savedPerson -> log.info("{}{} (ID: {}) GUARDADA como DEAD_DETAILS_SPECIFIED.", logPrefixScheduler, savedPerson.getName(), savedPerson.getId()))
-                            .doOnError(saveError -> log.error("{}ERROR al guardar a {} como DEAD_DETAILS_SPECIFIED: {}", logPrefixScheduler, person.getName(), saveError.getMessage()));
+    @Autowired
+    private SchedulerMembershipService membershipService;
+
+    @Autowired
+    private ReactiveCache<String, Person> personCache;
+
+    @Autowired
+    private CacheInvalidationBus invalidationBus;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Un único hilo dedicado a disparar los temporizadores; el trabajo posterior es reactivo.
+    private final Scheduler timerScheduler = Schedulers.newSingle("death-timer", true);
+
+    private final Map<String, ArmedDeath> timers = new ConcurrentHashMap<>();
+
+    private final AtomicLong appliedTransitions = new AtomicLong();
+
+    // Muertes vencidas encoladas y aún no escritas
+    private final AtomicInteger dueBacklog = new AtomicInteger();
+
+    private Timer transitionLag;
+    private DistributionSummary transitionsPerBatch;
+    private Counter transitions;
+    private Counter writeErrors;
+
+    // Muertes vencidas a la espera de escribirse en lote
+    private final Sinks.Many<PendingDeath> dueDeaths = Sinks.many().unicast().onBackpressureBuffer();
+
+    private Disposable writer;
+
+    private Disposable rebalancer;
+
+    @Value("${deathnote.scheduler.batch-size:500}")
+    private int batchSize;
+
+    @Value("${deathnote.scheduler.flush-interval:PT0.05S}")
+    private Duration flushInterval;
+
+    @Value("${deathnote.scheduler.write-retries:3}")
+    private int writeRetries;
+
+    @Value("${deathnote.scheduler.write-retry-backoff:PT0.1S}")
+    private Duration writeRetryBackoff;
+
+    // Espera antes de volver a encolar un lote que no se pudo escribir
+    @Value("${deathnote.scheduler.rearm-delay:PT5S}")
+    private Duration rearmDelay;
+
+    @Value("${deathnote.scheduler.change-stream.enabled:false}")
+    private boolean changeStreamEnabled;
+
+    @PostConstruct
+    public void startWriter() {
+        registerMetrics();
+        // Agrupa las transiciones por tamaño o por tiempo, lo que ocurra antes, y escribe un lote cada vez.
+        writer = dueDeaths.asFlux()
+                .bufferTimeout(batchSize, flushInterval, true)
+                .concatMap(this::flush)
+                .subscribe();
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("deathnote.scheduler.pending", timers, Map::size)
+                .description("Muertes pendientes con temporizador armado en este nodo")
+                .register(meterRegistry);
+        Gauge.builder("deathnote.scheduler.backlog", dueBacklog, AtomicInteger::get)
+                .description("Muertes vencidas a la espera de escribirse")
+                .register(meterRegistry);
+        transitionLag = Timer.builder("deathnote.scheduler.lag")
+                .description("Retraso entre scheduledDeathTime y el procesamiento del lote que contiene la muerte")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        transitionsPerBatch = DistributionSummary.builder("deathnote.scheduler.batch.size")
+                .description("Transiciones aplicadas por lote")
+                .register(meterRegistry);
+        transitions = Counter.builder("deathnote.scheduler.transitions")
+                .description("Muertes escritas por el scheduler")
+                .register(meterRegistry);
+        writeErrors = Counter.builder("deathnote.scheduler.errors")
+                .description("Lotes de muertes que no se pudieron escribir")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebalancer = membershipService.membershipChanges()
+                .concatMap(this::rebuildOwnedPartition)
+                .subscribe();
+    }
+
+    /**
+     * Rearma la partición de este nodo desde la BD con los nodos vivos actuales. Lo usa el change
+     * stream cuando ha perdido eventos y no puede saber qué muertes se escribieron en el hueco.
+     */
+    public Mono<Long> rebuildOwnedPartition() {
+        return rebuildOwnedPartition(membershipService.getLiveNodes());
+    }
+
+    /**
+     * Suelta los temporizadores reconstruidos que ya no le tocan a este nodo y arma los de su partición.
+     */
+    private Mono<Long> rebuildOwnedPartition(List<String> liveNodes) {
+        timers.forEach((personId, armed) -> {
+            if (!armed.localWrite && !membershipService.owns(personId) && timers.remove(personId, armed)) {
+                armed.timer.dispose();
+            }
+        });
+        return personRepository.findPendingDeaths()
+                .filter(pending -> PENDING_STATUSES.contains(pending.getStatus()))
+                .filter(pending -> membershipService.owns(pending.getId()))
+                .doOnNext(pending -> arm(pending, false))
+                .count()
+                .doOnNext(count -> log.info("{}{} muertes pendientes reprogramadas desde la BD ({} nodos vivos).",
+                        LOG_PREFIX, count, liveNodes.size()))
+                .onErrorResume(error -> {
+                    log.error("{}ERROR al reconstruir las muertes pendientes.", LOG_PREFIX, error);
+                    return Mono.just(0L);
+                });
+    }
+
+    /**
+     * Arma (o rearma) el temporizador de la persona según su estado actual. Si ya no tiene una
+     * muerte pendiente, cancela cualquier temporizador previo.
+     */
+    public void schedule(Person person) {
+        if (person.getId() == null) {
+            return;
+        }
+        if (!isPending(person)) {
+            cancel(person.getId());
+            return;
+        }
+        if (changeStreamEnabled) {
+            // El change stream entrega la escritura a todos los nodos; solo el dueño de la partición la arma.
+            onRemoteChange(person);
+            return;
+        }
+        arm(PendingDeath.of(person), true);
+    }
+
+    /**
+     * Aplica un cambio de persona recibido del change stream (de este u otro nodo).
+     */
+    public void onRemoteChange(Person person) {
+        // La escritura pudo hacerse en otro nodo
+        personCache.invalidate(person.getId());
+        if (isPending(person) && membershipService.owns(person.getId())) {
+            arm(PendingDeath.of(person), false);
+        } else {
+            cancel(person.getId());
+        }
+    }
+
+    private void arm(PendingDeath pending, boolean localWrite) {
+        Duration delay = Duration.between(LocalDateTime.now(), pending.getScheduledDeathTime());
+        arm(pending, delay.isNegative() ? Duration.ZERO : delay, localWrite);
+    }
+
+    private void arm(PendingDeath pending, Duration delay, boolean localWrite) {
+        String personId = pending.getId();
+        Disposable.Swap timer = Disposables.swap();
+        ArmedDeath current = timers.get(personId);
+        ArmedDeath armed = new ArmedDeath(timer, localWrite || (current != null && current.localWrite));
+        ArmedDeath previous = timers.put(personId, armed);
+        if (previous != null) {
+            previous.timer.dispose();
+        }
+        timer.update(Mono.delay(delay, timerScheduler).subscribe(tick -> fire(pending, armed)));
+        if (log.isDebugEnabled()) {
+            log.debug("{}Muerte de ID {} ({}) programada en {} ms.", LOG_PREFIX, personId, pending.getStatus(), delay.toMillis());
+        }
+    }
+
+    public void cancel(String personId) {
+        ArmedDeath previous = timers.remove(personId);
+        if (previous != null) {
+            previous.timer.dispose();
+            log.debug("{}Temporizador cancelado para ID: {}", LOG_PREFIX, personId);
+        }
+    }
+
+    public int pendingCount() {
+        return timers.size();
+    }
+
+    boolean isArmed(String personId) {
+        return timers.containsKey(personId);
+    }
+
+    public long getAppliedTransitions() {
+        return appliedTransitions.get();
+    }
+
+    private void fire(PendingDeath pending, ArmedDeath armed) {
+        timers.remove(pending.getId(), armed);
+        // Los temporizadores disparan siempre en el mismo hilo, así que la emisión está serializada.
+        dueBacklog.incrementAndGet();
+        Sinks.EmitResult result = dueDeaths.tryEmitNext(pending);
+        if (result.isFailure()) {
+            dueBacklog.decrementAndGet();
+            log.error("{}No se pudo encolar la muerte de ID {}: {}", LOG_PREFIX, pending.getId(), result);
+        }
+    }
+
+    private Mono<Integer> flush(List<PendingDeath> batch) {
+        return Mono.defer(() -> personRepository.markDead(batch))
+                .retryWhen(Retry.backoff(writeRetries, writeRetryBackoff)
+                        .doBeforeRetry(signal -> log.warn("{}Reintentando lote de {} muertes ({}): {}",
+                                LOG_PREFIX, batch.size(), signal.totalRetries() + 1, signal.failure().getMessage())))
+                // La escritura bulk no emite eventos de guardado: el lote se invalida aquí con un solo evento
+                .doOnNext(modified -> invalidationBus.invalidate(personCache, batch.stream().map(PendingDeath::getId).toList()))
+                .doOnNext(appliedTransitions::addAndGet)
+                .doOnNext(modified -> recordFlush(batch, modified))
+                .doOnNext(modified -> log.atInfo()
+                        .addMarker(SampledLogFilter.SAMPLED)
+                        .setMessage(LOG_PREFIX + "Lote de muertes vencidas aplicado")
+                        .addKeyValue("batchSize", batch.size())
+                        .addKeyValue("modified", modified)
+                        .log())
+                .onErrorResume(error -> {
+                    writeErrors.increment();
+                    log.error("{}ERROR al aplicar lote de {} muertes; se rearman en {} ms.",
+                            LOG_PREFIX, batch.size(), rearmDelay.toMillis(), error);
+                    batch.forEach(this::rearm);
+                    return Mono.just(0);
                 })
-                .subscribe(
-                        updatedPerson -> log.debug("{}Ciclo (Muerte Explícita) para {} finalizado.", logPrefixScheduler, updatedPerson.getName()),
-                        error -> log.error("{}ERROR general en scheduler (Muerte Explícita).", logPrefixScheduler, error)
-                );
-        // Podrías añadir un log general al final del método processPendingDeaths si no se encontró nada para procesar en ninguna categoría.
+                .doFinally(signal -> dueBacklog.addAndGet(-batch.size()));
+    }
+
+    /**
+     * Vuelve a programar una muerte cuyo lote no se pudo escribir, salvo que entretanto se haya
+     * reprogramado. Si la persona se borró o cambió, la escritura condicionada no modificará nada.
+     */
+    private void rearm(PendingDeath pending) {
+        if (!timers.containsKey(pending.getId())) {
+            arm(pending, rearmDelay, true);
+        }
+    }
+
+    /**
+     * Solo se llama cuando markDead termina bien, así que un lote fallido y rearmado se mide una vez, al
+     * procesarse. El resultado bulk solo da el total de modificados y no cuáles, por eso el retraso se
+     * mide para todo el lote: incluye las muertes que ya estaban aplicadas, reprogramadas o borradas, y
+     * las transiciones reales son las de {@code deathnote.scheduler.transitions}.
+     */
+    private void recordFlush(List<PendingDeath> batch, int modified) {
+        LocalDateTime now = LocalDateTime.now();
+        batch.forEach(pending -> transitionLag.record(
+                Math.max(0, Duration.between(pending.getScheduledDeathTime(), now).toMillis()), TimeUnit.MILLISECONDS));
+        transitionsPerBatch.record(modified);
+        transitions.increment(modified);
+    }
+
+    static boolean isPending(Person person) {
+        return person.isAlive()
+                && person.getScheduledDeathTime() != null
+                && PENDING_STATUSES.contains(person.getStatus());
+    }
+
+    private static final class ArmedDeath {
+        private final Disposable timer;
+        // Escrita en este nodo: se mantiene aunque la partición pase a otro nodo
+        private final boolean localWrite;
+
+        private ArmedDeath(Disposable timer, boolean localWrite) {
+            this.timer = timer;
+            this.localWrite = localWrite;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebalancer != null) {
+            rebalancer.dispose();
+        }
+        timers.values().forEach(armed -> armed.timer.dispose());
+        timers.clear();
+        timerScheduler.dispose();
+        if (writer != null) {
+            writer.dispose();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.springboot.webflux.deathnote.services;
+
+/**
+ * Foto rechazada al subirla (formato no reconocido o tamaño excesivo). El mensaje se muestra en el formulario.
+ */
+public class InvalidPhotoException extends RuntimeException {
+
+    public InvalidPhotoException(String message) {
+        super(message);
+    }
+}
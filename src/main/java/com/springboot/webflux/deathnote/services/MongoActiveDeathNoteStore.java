@@ -0,0 +1,94 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.model.ActiveDeathNoteSession;
+import com.springboot.webflux.deathnote.repository.ActiveDeathNoteSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Death Note activa en la colección {@code active_death_notes}, con un token aleatorio en la cookie.
+ * Cualquier réplica atiende al visitante y el estado sobrevive a los reinicios; el índice TTL borra
+ * los documentos caducados, y los que el monitor de TTL aún no ha borrado se ignoran al leer.
+ */
+@Service
+@ConditionalOnProperty(name = "deathnote.session.store", havingValue = "mongo")
+public class MongoActiveDeathNoteStore implements ActiveDeathNoteStore {
+
+    static final String COOKIE_NAME = "DN_SESSION";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ActiveDeathNoteSessionRepository sessionRepository;
+    private final Duration ttl;
+    private final boolean secure;
+
+    public MongoActiveDeathNoteStore(ActiveDeathNoteSessionRepository sessionRepository,
+                                     @Value("${deathnote.session.ttl:PT12H}") Duration ttl,
+                                     @Value("${deathnote.session.cookie.secure:false}") boolean secure) {
+        this.sessionRepository = sessionRepository;
+        this.ttl = ttl;
+        this.secure = secure;
+    }
+
+    @Override
+    public Mono<String> get(ServerWebExchange exchange) {
+        String token = token(exchange);
+        if (token == null) {
+            return Mono.empty();
+        }
+        return sessionRepository.findById(token)
+                .filter(session -> session.getExpiresAt().after(new Date()))
+                .map(ActiveDeathNoteSession::getDeathNoteId);
+    }
+
+    @Override
+    public Mono<Void> set(ServerWebExchange exchange, String deathNoteId) {
+        // Un token nuevo en cada selección: el anterior deja de valer
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = ENCODER.encodeToString(bytes);
+        Date expiresAt = Date.from(Instant.now().plus(ttl));
+        return sessionRepository.save(new ActiveDeathNoteSession(token, deathNoteId, expiresAt))
+                .doOnNext(saved -> exchange.getResponse().addCookie(cookie(token, ttl)))
+                .then(deletePrevious(exchange));
+    }
+
+    @Override
+    public Mono<Void> clear(ServerWebExchange exchange) {
+        exchange.getResponse().addCookie(cookie("", Duration.ZERO));
+        return deletePrevious(exchange);
+    }
+
+    private Mono<Void> deletePrevious(ServerWebExchange exchange) {
+        String previous = token(exchange);
+        return previous == null ? Mono.empty() : sessionRepository.deleteById(previous);
+    }
+
+    private static String token(ServerWebExchange exchange) {
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(COOKIE_NAME);
+        return cookie == null || cookie.getValue().isEmpty() ? null : cookie.getValue();
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+}
@@ -0,0 +1,11 @@
+package com.springboot.webflux.deathnote.services;
+
+/**
+ * La persona, Death Note o propietario sobre el que se opera no existe. La API lo devuelve como 404.
+ */
+public class NotFoundException extends RuntimeException {
+
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
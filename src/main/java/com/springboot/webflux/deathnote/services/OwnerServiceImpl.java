@@ -14,7 +14,7 @@ public class OwnerServiceImpl implements OwnerService{
 
     @Override
     public Mono<Owner> find() {
-        return repository.findFirstBy().switchIfEmpty(Mono.error(new IllegalStateException("No se encontró ningún propietario")));
+        return repository.findFirstBy().switchIfEmpty(Mono.error(new NotFoundException("No se encontró ningún propietario")));
     }
 
     @Override
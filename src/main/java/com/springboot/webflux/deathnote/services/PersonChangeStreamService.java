@@ -0,0 +1,183 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.SchedulerResumeToken;
+import com.springboot.webflux.deathnote.repository.SchedulerResumeTokenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Escucha el change stream de la colección people para armar o cancelar temporizadores en cuanto
+ * se escribe una persona, incluso desde otro nodo. Guarda periódicamente el resume token de cada
+ * nodo para que un reinicio continúe donde se quedó sin perder eventos.
+ * <p>
+ * Requiere que Mongo corra como replica set; se activa con deathnote.scheduler.change-stream.enabled.
+ * El token se guarda con el id del nodo, así que también exige un deathnote.scheduler.cluster.node-id
+ * fijo: con uno aleatorio cada arranque empezaría desde cero y dejaría tokens huérfanos.
+ */
+@Service
+public class PersonChangeStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonChangeStreamService.class);
+
+    // Código de Mongo cuando el token ya no está en el oplog
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    // Tras perder el token se relee un poco antes de la reconstrucción por si el reloj del nodo va por
+    // delante del de Mongo; rearmar una muerte ya armada no tiene efecto.
+    private static final Duration HISTORY_LOST_OVERLAP = Duration.ofSeconds(5);
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private SchedulerResumeTokenRepository resumeTokenRepository;
+
+    @Autowired
+    private SchedulerMembershipService membershipService;
+
+    @Autowired
+    private DeathSchedulerService deathSchedulerService;
+
+    @Value("${deathnote.scheduler.change-stream.enabled:false}")
+    private boolean enabled;
+
+    @Value("${deathnote.scheduler.change-stream.token-save-interval:PT1S}")
+    private Duration tokenSaveInterval;
+
+    // Sin autoCancel: tras stop() un nuevo start() vuelve a suscribirse y sigue guardando tokens
+    private final Sinks.Many<BsonValue> processedTokens = Sinks.many().multicast().onBackpressureBuffer(Queues.SMALL_BUFFER_SIZE, false);
+
+    private Disposable subscription;
+
+    private Disposable tokenWriter;
+
+    @PostConstruct
+    public void checkNodeId() {
+        if (enabled && !membershipService.isNodeIdConfigured()) {
+            throw new IllegalStateException("deathnote.scheduler.change-stream.enabled necesita deathnote.scheduler.cluster.node-id "
+                    + "fijo para recuperar el resume token tras un reinicio.");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        String nodeId = membershipService.getNodeId();
+
+        // Se guarda como mucho un token por intervalo: basta con el último procesado.
+        tokenWriter = processedTokens.asFlux()
+                .sample(tokenSaveInterval)
+                // Con defer un fallo al leer el token también se trata aquí y no corta la escritura
+                .concatMap(token -> Mono.defer(() -> resumeTokenRepository.save(new SchedulerResumeToken(nodeId, tokenData(token), new Date())))
+                        .onErrorResume(error -> {
+                            log.warn("No se pudo guardar el resume token del nodo {}: {}", nodeId, error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe(saved -> { }, error ->
+                        log.error("La escritura de resume tokens del nodo {} se ha detenido.", nodeId, error));
+
+        // Cada (re)suscripción relee el último token guardado, así un reintento continúa donde se quedó.
+        subscription = Flux.defer(() -> resumeTokenRepository.findById(nodeId)
+                        .map(saved -> (BsonValue) new BsonDocument("_data", new BsonString(saved.getData())))
+                        .flatMapMany(token -> watch(token, null))
+                        .switchIfEmpty(Flux.defer(() -> watch(null, null))))
+                .onErrorResume(this::isHistoryLost, error -> Flux.defer(() -> {
+                    log.warn("El resume token del nodo {} ya no está en el oplog; se reconstruye la partición y se escucha desde ahora.", nodeId);
+                    // Lo escrito durante el hueco se rearma desde la BD; lo posterior a este instante llega por el stream
+                    Instant from = Instant.now().minus(HISTORY_LOST_OVERLAP);
+                    return deathSchedulerService.rebuildOwnedPartition().thenMany(watch(null, from));
+                }))
+                // Dentro del reintento: si falla el procesado de un evento se reabre el stream desde el último
+                // token guardado en lugar de cancelar la suscripción
+                .doOnNext(this::onEvent)
+                .doOnError(error -> log.error("ERROR en el change stream de personas, reintentando: {}", error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(event -> { }, error ->
+                        log.error("El change stream de personas del nodo {} se ha detenido.", nodeId, error));
+        log.info("Change stream de personas activo para el nodo {}.", nodeId);
+    }
+
+    private Flux<ChangeStreamEvent<Person>> watch(BsonValue resumeToken, Instant startAt) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(Aggregation.match(
+                        Criteria.where("operationType").in(List.of("insert", "update", "replace", "delete")))))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        } else if (startAt != null) {
+            options.resumeAt(startAt);
+        }
+        return mongoTemplate.changeStream(mongoTemplate.getCollectionName(Person.class), options.build(), Person.class);
+    }
+
+    private void onEvent(ChangeStreamEvent<Person> event) {
+        if (event.getOperationType() == OperationType.DELETE) {
+            BsonDocument key = event.getRaw() != null ? event.getRaw().getDocumentKey() : null;
+            if (key != null && key.isObjectId("_id")) {
+                deathSchedulerService.cancel(key.getObjectId("_id").getValue().toHexString());
+            } else if (key != null && key.isString("_id")) {
+                deathSchedulerService.cancel(key.getString("_id").getValue());
+            }
+        } else if (event.getBody() != null) {
+            deathSchedulerService.onRemoteChange(event.getBody());
+        }
+        if (event.getResumeToken() != null) {
+            processedTokens.tryEmitNext(event.getResumeToken());
+        }
+    }
+
+    private boolean isHistoryLost(Throwable error) {
+        return error instanceof MongoCommandException commandException
+                && commandException.getErrorCode() == CHANGE_STREAM_HISTORY_LOST;
+    }
+
+    private static String tokenData(BsonValue token) {
+        return token.asDocument().getString("_data").getValue();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (tokenWriter != null) {
+            tokenWriter.dispose();
+        }
+    }
+}
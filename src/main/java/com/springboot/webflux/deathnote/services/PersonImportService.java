@@ -0,0 +1,216 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.springboot.webflux.deathnote.model.Person;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Importación masiva de nombres. Las líneas (NDJSON o CSV) se leen según llegan, se validan con las
+ * restricciones de {@link Person} y las válidas se insertan en lotes con una sola inserción y un
+ * solo incremento del contador de la Death Note por lote. Como mucho hay
+ * deathnote.bulk.concurrency lotes en vuelo; mientras tanto no se piden más líneas al cliente.
+ * <p>
+ * Cada fila produce un resultado (id o error) en cuanto se conoce, no necesariamente en orden. Una fila
+ * guardada que no se pudo sumar al contador lleva las dos cosas: existe, pero la Death Note no la cuenta.
+ */
+@Service
+public class PersonImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonImportService.class);
+
+    private static final Pattern CSV_HEADER = Pattern.compile("\"?name\"?(,.*)?", Pattern.CASE_INSENSITIVE);
+
+    public enum Format { NDJSON, CSV }
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private DeathNoteService deathNoteService;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${deathnote.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${deathnote.bulk.concurrency:2}")
+    private int concurrency;
+
+    @Value("${deathnote.bulk.batch-timeout:PT0.2S}")
+    private Duration batchTimeout;
+
+    public Flux<ImportResult> importPeople(String deathNoteId, Flux<String> lines, Format format) {
+        ObjectReader rowReader = objectMapper.readerFor(ImportRow.class);
+        return lines
+                .index()
+                // Líneas en blanco y cabecera CSV no son filas
+                .filter(line -> !line.getT2().isBlank())
+                .filter(line -> format != Format.CSV || line.getT1() > 0 || !isCsvHeader(line.getT2()))
+                .map(line -> parse(line.getT1() + 1, line.getT2(), format, rowReader, deathNoteId))
+                .publish(rows -> Flux.merge(
+                        rows.filter(row -> row.error() != null)
+                                .map(row -> ImportResult.failed(row.line(), row.name(), row.error())),
+                        rows.filter(row -> row.error() == null)
+                                // fairBackpressure: el lote que cierra el timeout espera a que flatMap pida más en vez de desbordar
+                                .bufferTimeout(batchSize, batchTimeout, true)
+                                .flatMap(batch -> insertBatch(deathNoteId, batch), concurrency)));
+    }
+
+    private Flux<ImportResult> insertBatch(String deathNoteId, List<ParsedRow> batch) {
+        return Flux.defer(() -> {
+            List<Person> people = new ArrayList<>(batch.size());
+            batch.forEach(row -> people.add(row.person()));
+            Map<String, Person> saved = new HashMap<>();
+            return personService.saveInitialEntries(people)
+                    .doOnNext(person -> saved.put(person.getId(), person))
+                    .then(Mono.just(Optional.<String>empty()))
+                    .onErrorResume(error -> {
+                        log.error("ERROR al importar un lote de {} personas ({} guardadas): {}", batch.size(), saved.size(), error.getMessage(), error);
+                        return Mono.just(Optional.of("Error al guardar: " + error.getMessage()));
+                    })
+                    .flatMap(insertError -> countSaved(deathNoteId, List.copyOf(saved.keySet()))
+                            .map(countError -> results(batch, saved, insertError.orElse(null), countError.orElse(null))))
+                    .flatMapMany(Flux::fromIterable);
+        });
+    }
+
+    /**
+     * Cuenta en la Death Note (y marca como contadas) las personas que sí se guardaron. Si falla, las personas ya guardadas no se deshacen: sus filas
+     * llevan el id y el error para que el cliente sepa que existen pero no están contadas.
+     */
+    private Mono<Optional<String>> countSaved(String deathNoteId, List<String> saved) {
+        if (saved.isEmpty()) {
+            return Mono.just(Optional.empty());
+        }
+        return deathNoteService.addPeopleToDeathNote(deathNoteId, saved)
+                .then(Mono.just(Optional.<String>empty()))
+                .onErrorResume(error -> {
+                    log.error("ERROR al contar {} personas importadas en la Death Note {}: {}", saved.size(), deathNoteId, error.getMessage(), error);
+                    return Mono.just(Optional.of("Guardada, pero no se pudo sumar al contador de la Death Note: " + error.getMessage()));
+                });
+    }
+
+    // Cada fila se resuelve con la persona que devolvió la inserción (los ids se asignan antes de insertar)
+    private static List<ImportResult> results(List<ParsedRow> batch, Map<String, Person> saved, String insertError, String countError) {
+        List<ImportResult> results = new ArrayList<>(batch.size());
+        for (ParsedRow row : batch) {
+            Person person = saved.get(row.person().getId());
+            results.add(person != null
+                    ? ImportResult.saved(row.line(), person.getId(), person.getName(), countError)
+                    : ImportResult.failed(row.line(), row.name(), insertError != null ? insertError : "Error al guardar"));
+        }
+        return results;
+    }
+
+    private ParsedRow parse(long line, String text, Format format, ObjectReader rowReader, String deathNoteId) {
+        ImportRow row;
+        try {
+            row = format == Format.CSV ? csvRow(text) : rowReader.readValue(text);
+        } catch (JsonProcessingException e) {
+            return new ParsedRow(line, null, "Fila mal formada: " + e.getOriginalMessage());
+        } catch (IllegalArgumentException e) {
+            return new ParsedRow(line, null, "Fila mal formada: " + e.getMessage());
+        }
+        Person person = new Person(row.name(), null, row.deathDetails(), null, deathNoteId);
+        Set<ConstraintViolation<Person>> violations = validator.validate(person);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return new ParsedRow(line, person, message);
+        }
+        return new ParsedRow(line, person, null);
+    }
+
+    /**
+     * Fila CSV {@code name,deathDetails} con comillas dobles opcionales ({@code ""} escapa una comilla).
+     * Cada registro ocupa una línea.
+     */
+    static ImportRow csvRow(String text) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("comillas sin cerrar");
+        }
+        fields.add(field.toString());
+        if (fields.size() > 2) {
+            throw new IllegalArgumentException("se esperaban como mucho 2 columnas (name,deathDetails)");
+        }
+        String name = fields.get(0).strip();
+        String details = fields.size() > 1 && !fields.get(1).isBlank() ? fields.get(1).strip() : null;
+        return new ImportRow(name, details);
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return CSV_HEADER.matcher(line.strip()).matches();
+    }
+
+    public record ImportRow(String name, String deathDetails) {
+    }
+
+    private record ParsedRow(long line, Person person, String error) {
+        String name() {
+            return person != null ? person.getName() : null;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ImportResult(long line, String id, String name, String error) {
+
+        // error solo si la fila se guardó pero no se pudo contar
+        static ImportResult saved(long line, String id, String name, String error) {
+            return new ImportResult(line, id, name, error);
+        }
+
+        static ImportResult failed(long line, String name, String error) {
+            return new ImportResult(line, null, name, error);
+        }
+    }
+}
@@ -6,11 +6,21 @@ import reactor.core.publisher.Mono;
 
 import java.sql.Savepoint;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public interface PersonService {
 
+    // Tope de filas por página de findPage; los listados lo usan también para su PersonListPage
+    int MAX_PAGE_SIZE = 500;
+
     public Flux<Person> findAll();
 
+    /**
+     * Página ordenada por (entryTime, _id) descendente tras el cursor dado. Un cursor inválido lista
+     * desde el principio; el tamaño se acota entre 1 y {@link #MAX_PAGE_SIZE}.
+     */
+    public Flux<Person> findPage(String deathNoteId, Boolean alive, String status, String afterCursor, int size);
+
     public Mono<Person> findById(String id);
 
     public Mono<Person> save(Person person);
@@ -19,5 +29,11 @@ public interface PersonService {
 
     public Mono<Person> saveInitialEntry(Person person);
 
+    /**
+     * Igual que saveInitialEntry para un lote, con una sola inserción. No las cuenta en la Death Note.
+     * Si la inserción falla a medias emite las personas que sí quedaron guardadas y después el error.
+     */
+    public Flux<Person> saveInitialEntries(List<Person> people);
+
     Mono<Person> specifyDeath(String personId, LocalDateTime explicitDeathDateTime, String details, String cause);
 }
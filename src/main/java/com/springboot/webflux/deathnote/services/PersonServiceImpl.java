@@ -1,7 +1,10 @@
 package com.springboot.webflux.deathnote.services;
 
+import com.springboot.webflux.deathnote.config.SampledLogFilter;
 import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
 import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +13,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class PersonServiceImpl implements PersonService {
@@ -19,70 +24,141 @@ public class PersonServiceImpl implements PersonService {
     @Autowired
     private PersonRepository personRepository;
 
+    @Autowired
+    private DeathSchedulerService deathSchedulerService;
+
+    @Autowired
+    private DeathNoteService deathNoteService;
+
+    @Autowired
+    private PhotoGarbageCollector photoGarbageCollector;
+
+    // Los guardados y borrados la invalidan con CacheInvalidationListener
+    @Autowired
+    private ReactiveCache<String, Person> personCache;
+
     @Override
     public Flux<Person> findAll() {
         return personRepository.findAll();
     }
 
+    @Override
+    public Flux<Person> findPage(String deathNoteId, Boolean alive, String status, String afterCursor, int size) {
+        PersonCursor after = null;
+        if (afterCursor != null && !afterCursor.isEmpty()) {
+            try {
+                after = PersonCursor.decode(afterCursor);
+            } catch (IllegalArgumentException e) {
+                log.warn("Cursor inválido '{}', se lista desde el principio.", afterCursor);
+            }
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return personRepository.findPage(deathNoteId, alive, status, after, pageSize);
+    }
+
     @Override
     public Mono<Person> findById(String id) {
-        return personRepository.findById(id);
+        return personCache.get(id, personRepository::findById);
     }
 
     @Override
     public Mono<Person> save(Person person) {
-        // Este log es útil para ver qué se está guardando exactamente
-        log.info("Guardando persona en BD: ID: {}, Nombre: {}, Foto: {}, Viva: {}, Estado: {}, Fecha Muerte Prog.: {}, Causa Muerte: {}, Detalles Muerte: {}",
-                person.getId(),
-                person.getName(),
-                person.getFacePhoto(),
-                person.isAlive(),
-                person.getStatus(),
-                person.getScheduledDeathTime(),
-                person.getCauseOfDeath(),
-                person.getDeathDetails());
+        logSave(person);
         return personRepository.save(person);
     }
 
     @Override
     public Mono<Void> delete(Person person) {
         log.debug("Eliminando persona: {}", person.getName());
-        return personRepository.delete(person);
+        // Se descuenta antes de borrar y solo de la Death Note en la que estaba contada: si el borrado
+        // falla, la persona queda sin contar en lugar de contada dos veces.
+        // La foto solo se suelta una vez borrado el documento; si algo falla la recoge el recolector
+        return deathNoteService.removePersonFromDeathNote(person.getId())
+                .then(personRepository.delete(person))
+                .doOnSuccess(unused -> {
+                    deathSchedulerService.cancel(person.getId());
+                    photoGarbageCollector.enqueueRelease(person.getFacePhoto());
+                });
     }
 
     @Override
     public Mono<Person> saveInitialEntry(Person person) {
+        prepareInitialEntry(person, LocalDateTime.now());
+        // person.setFacePhoto() se manejará en el controlador si se sube un archivo,
+        // pero aquí no afecta la programación de la muerte.
+
+        return this.save(person) // Llama al método save de esta clase, que luego llama al repositorio.
+                .doOnNext(saved -> log.atInfo()
+                        .addMarker(SampledLogFilter.SAMPLED)
+                        .setMessage("Anotada (regla temporal 40s)")
+                        .addKeyValue("personId", saved.getId())
+                        .addKeyValue("scheduledDeathTime", saved.getScheduledDeathTime())
+                        .log())
+                .doOnNext(deathSchedulerService::schedule);
+    }
+
+    @Override
+    public Flux<Person> saveInitialEntries(List<Person> people) {
         LocalDateTime now = LocalDateTime.now();
+        List<String> ids = new ArrayList<>(people.size());
+        people.forEach(person -> {
+            prepareInitialEntry(person, now);
+            // Ids asignados antes de insertar para saber cuáles llegaron a guardarse si la inserción falla a medias
+            if (person.getId() == null) {
+                person.setId(new ObjectId().toHexString());
+            }
+            ids.add(person.getId());
+        });
+        log.debug("Anotando en bloque {} personas.", people.size());
+        return personRepository.insert(people)
+                .onErrorResume(error -> personRepository.findAllById(ids).concatWith(Mono.error(error)))
+                .doOnNext(deathSchedulerService::schedule);
+    }
+
+    private void prepareInitialEntry(Person person, LocalDateTime now) {
         person.setEntryTime(now);
         person.setAlive(true); // Siempre viva al ser anotada.
 
         // --- LÓGICA TEMPORAL: Muerte en 40 segundos, independientemente de la foto ---
-        log.info("Aplicando regla temporal: {} será programada para morir en 40 segundos.", person.getName());
+        log.debug("Aplicando regla temporal: {} será programada para morir en 40 segundos.", person.getName());
         person.setScheduledDeathTime(now.plusSeconds(40));
-        person.setStatus("PENDING_HEART_ATTACK"); // El scheduler buscará este estado.
+        person.setStatus(DeathSchedulerService.PENDING_HEART_ATTACK); // El scheduler buscará este estado.
         // CauseOfDeath y DeathDate real se establecerán por el scheduler.
         person.setCauseOfDeath(null);
         person.setDeathDetails("Muerte programada automáticamente a los 40s (regla temporal).");
-        // person.setFacePhoto() se manejará en el controlador si se sube un archivo,
-        // pero aquí no afecta la programación de la muerte.
         // --- FIN LÓGICA TEMPORAL ---
+    }
 
-        log.info("ANOTADA (REGLA TEMPORAL 40s): {} (ID: {}). Muerte programada para las {}. Foto (si la hay, no afecta programación): {}",
-                person.getName(), person.getId(), person.getScheduledDeathTime(), person.getFacePhoto());
-
-        return this.save(person); // Llama al método save de esta clase, que luego llama al repositorio.
+    /**
+     * Todos los campos de la persona que se va a guardar, como pares clave/valor. Con DEBUG
+     * desactivado {@code atDebug()} devuelve un builder vacío y no se reserva nada.
+     */
+    private void logSave(Person person) {
+        log.atDebug()
+                .setMessage("Guardando persona en BD")
+                .addKeyValue("personId", person.getId())
+                .addKeyValue("name", person.getName())
+                .addKeyValue("photo", person.getFacePhoto())
+                .addKeyValue("alive", person.isAlive())
+                .addKeyValue("status", person.getStatus())
+                .addKeyValue("deathDate", person.getDeathDate())
+                .addKeyValue("scheduledDeathTime", person.getScheduledDeathTime())
+                .addKeyValue("causeOfDeath", person.getCauseOfDeath())
+                .addKeyValue("deathDetails", person.getDeathDetails())
+                .log();
     }
 
     // En PersonServiceImpl.java
     public Mono<Person> specifyDeath(String personId, LocalDateTime explicitDeathDateTime, String deathDetails, String causeOfDeath /* o elimínalo si ya no lo usas */) {
-        log.info("Servicio: Especificando muerte para ID: {}. Fecha/Hora: {}, Detalles: '{}', Causa: '{}'",
-                personId, explicitDeathDateTime, deathDetails, causeOfDeath);
+        log.atDebug()
+                .setMessage("Especificando muerte")
+                .addKeyValue("personId", personId)
+                .addKeyValue("deathDateTime", explicitDeathDateTime)
+                .addKeyValue("causeOfDeath", causeOfDeath)
+                .log();
 
         return personRepository.findById(personId)
                 .flatMap(person -> {
-                    log.info("Persona encontrada para especificar muerte: {} (ID: {}). Estado actual: {}, Viva: {}",
-                            person.getName(), person.getId(), person.getStatus(), person.isAlive());
-
                     person.setDeathDetails(deathDetails);
                     // if (causeOfDeath != null) { // Solo si todavía usas causeOfDeath
                     //     person.setCauseOfDeath(causeOfDeath);
@@ -93,16 +169,14 @@ public class PersonServiceImpl implements PersonService {
                         // La fecha especificada ya pasó o es inminente
                         person.setAlive(false);
                         person.setDeathDate(explicitDeathDateTime); // Esta es la fecha/hora real de muerte
-                        person.setStatus("DEAD_DETAILS_SPECIFIED");
+                        person.setStatus(DeathSchedulerService.DEAD_DETAILS_SPECIFIED);
                         person.setScheduledDeathTime(null); // Ya no hay muerte programada, ya ocurrió
-                        log.info("La fecha de muerte especificada ({}) ya pasó o es inminente. Marcando como muerta.", explicitDeathDateTime);
                     } else if (explicitDeathDateTime != null) {
                         // La fecha especificada es en el futuro
                         person.setAlive(true); // Sigue viva
                         person.setDeathDate(null); // La muerte real aún no ha ocurrido
                         person.setScheduledDeathTime(explicitDeathDateTime); // El scheduler usará esta fecha/hora
-                        person.setStatus("DEATH_SCHEDULED_EXPLICITLY"); // Nuevo estado para que el scheduler lo maneje
-                        log.info("Muerte programada explícitamente para {} en {}.", person.getName(), explicitDeathDateTime);
+                        person.setStatus(DeathSchedulerService.DEATH_SCHEDULED_EXPLICITLY); // Nuevo estado para que el scheduler lo maneje
                     } else {
                         // No se proporcionó explicitDeathDateTime, esto no debería pasar si la validación del controlador es correcta.
                         // O podrías decidir qué hacer en este caso, ¿mantener la programación original?
@@ -111,15 +185,18 @@ public class PersonServiceImpl implements PersonService {
                         // Podrías retornar Mono.error() o manejarlo de otra forma.
                     }
 
-                    log.info("Actualizando persona {} (ID: {}) a estado {}, deathDate: {}, scheduledDeathTime: {}, alive: {}",
-                            person.getName(), person.getId(), person.getStatus(), person.getDeathDate(), person.getScheduledDeathTime(), person.isAlive());
-
-                    // Loguear todos los campos antes de guardar para máxima claridad
-                    log.info("Guardando persona en BD: ID: {}, Nombre: {}, Foto: {}, Viva: {}, Estado: {}, Fecha Muerte Real: {}, Fecha Muerte Prog.: {}, Causa Muerte: {}, Detalles Muerte: {}",
-                            person.getId(), person.getName(), person.getFacePhoto(), person.isAlive(), person.getStatus(), person.getDeathDate(), person.getScheduledDeathTime(), person.getCauseOfDeath(), person.getDeathDetails());
-
+                    log.atInfo()
+                            .addMarker(SampledLogFilter.SAMPLED)
+                            .setMessage("Muerte especificada")
+                            .addKeyValue("personId", person.getId())
+                            .addKeyValue("status", person.getStatus())
+                            .addKeyValue("deathDate", person.getDeathDate())
+                            .addKeyValue("scheduledDeathTime", person.getScheduledDeathTime())
+                            .log();
+                    logSave(person);
                     return personRepository.save(person);
                 })
+                .doOnNext(deathSchedulerService::schedule) // Rearma o cancela el temporizador según el nuevo estado
                 .switchIfEmpty(Mono.error(new RuntimeException("Persona no encontrada con ID: " + personId + " al intentar especificar muerte.")));
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Recolector de fotos. Al borrar una persona su foto solo se encola: la referencia se suelta en
+ * segundo plano, después de que el documento ya se haya borrado. Periódicamente se recorre el
+ * directorio de subidas por lotes, se comparan las claves con los facePhoto de {@code people} y se
+ * borran, a ritmo limitado, las que nadie usa; así se recogen también las que dejó una caída o una
+ * liberación perdida.
+ */
+@Service
+public class PhotoGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoGarbageCollector.class);
+
+    private static final String LOG_PREFIX = "PHOTO-GC: ";
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Value("${deathnote.photos.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${deathnote.photos.gc.grace-period:PT1H}")
+    private Duration gracePeriod;
+
+    @Value("${deathnote.photos.gc.deletes-per-second:20}")
+    private int deletesPerSecond;
+
+    // Fotos de personas borradas a la espera de soltar su referencia
+    private final Sinks.Many<String> releases = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    private Disposable releaser;
+
+    @PostConstruct
+    public void startReleaser() {
+        releaser = releases.asFlux()
+                .concatMap(key -> photoService.release(key)
+                        .onErrorResume(error -> {
+                            // La foto quedará huérfana y la recogerá la siguiente reconciliación
+                            log.warn("{}No se pudo liberar la foto {}: {}", LOG_PREFIX, key, error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * Encola la liberación de una foto. No bloquea ni toca el disco. Se llama desde el hilo del driver
+     * que termina cada borrado, y el sink no admite emisiones simultáneas: sin sincronizar, dos borrados
+     * a la vez darían FAIL_NON_SERIALIZED y la liberación se perdería hasta la reconciliación.
+     */
+    public synchronized void enqueueRelease(String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Sinks.EmitResult result = releases.tryEmitNext(key);
+        if (result.isFailure()) {
+            log.warn("{}No se pudo encolar la foto {}: {}", LOG_PREFIX, key, result);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${deathnote.photos.gc.interval:PT1H}",
+            initialDelayString = "${deathnote.photos.gc.initial-delay:PT5M}")
+    public void scheduledReconcile() {
+        reconcile().subscribe();
+    }
+
+    /**
+     * Una pasada de reconciliación. Devuelve los bytes liberados; si ya hay una en curso no hace nada.
+     */
+    public Mono<Long> reconcile() {
+        return Mono.defer(() -> {
+            if (!reconciling.compareAndSet(false, true)) {
+                log.info("{}Reconciliación ya en curso; se omite.", LOG_PREFIX);
+                return Mono.just(0L);
+            }
+            AtomicLong scanned = new AtomicLong();
+            AtomicLong deleted = new AtomicLong();
+            Duration deleteInterval = Duration.ofMillis(Math.max(1, 1000 / Math.max(1, deletesPerSecond)));
+            long start = System.nanoTime();
+
+            Mono<Long> orphans = photoService.listStoredKeys()
+                    .buffer(batchSize)
+                    .doOnNext(batch -> scanned.addAndGet(batch.size()))
+                    .concatMap(this::unreferenced)
+                    .delayElements(deleteInterval)
+                    .concatMap(key -> photoService.deleteIfOrphaned(key, gracePeriod)
+                            .doOnNext(bytes -> {
+                                if (bytes > 0) {
+                                    deleted.incrementAndGet();
+                                    log.debug("{}Foto huérfana {} borrada ({} bytes).", LOG_PREFIX, key, bytes);
+                                }
+                            }))
+                    .reduce(0L, Long::sum);
+
+            return orphans.zipWith(photoService.purgeStaleUploads(gracePeriod), Long::sum)
+                    .doOnNext(bytes -> log.info("{}{} fotos revisadas, {} huérfanas borradas, {} bytes recuperados en {} ms.",
+                            LOG_PREFIX, scanned.get(), deleted.get(), bytes, Duration.ofNanos(System.nanoTime() - start).toMillis()))
+                    .onErrorResume(error -> {
+                        log.error("{}ERROR en la reconciliación de fotos: {}", LOG_PREFIX, error.getMessage(), error);
+                        return Mono.just(0L);
+                    })
+                    .doFinally(signal -> reconciling.set(false));
+        });
+    }
+
+    /**
+     * Claves del lote que ninguna persona usa, con una sola consulta $in por lote.
+     */
+    private Flux<String> unreferenced(List<String> batch) {
+        return personRepository.findFacePhotosIn(batch)
+                .map(Person::getFacePhoto)
+                .collect(Collectors.toSet())
+                .flatMapMany(referenced -> Flux.fromIterable(batch).filter(key -> !referenced.contains(key)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (releaser != null) {
+            releaser.dispose();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.springboot.webflux.deathnote.services;
+
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+public interface PhotoService {
+
+    /**
+     * Guarda la foto en el almacén por contenido y suma una referencia. Devuelve la clave
+     * ({@code <sha256>.<ext>}) que se guarda en la persona; si el contenido ya existía no se duplica.
+     * Falla con {@link InvalidPhotoException} si el contenido no es una imagen admitida o es demasiado grande.
+     */
+    Mono<String> store(FilePart file);
+
+    /**
+     * Quita una referencia a la foto; al soltar la última se borran el fichero y sus miniaturas.
+     */
+    Mono<Void> release(String key);
+
+    /**
+     * Fichero a servir para la foto: el original si {@code size} es null, o la miniatura de ese
+     * tamaño, generándola si aún no existe. Vacío si la foto no existe.
+     */
+    Mono<Path> resolve(String key, Integer size);
+
+    /**
+     * Genera en segundo plano las miniaturas que le falten a una foto recién subida.
+     */
+    void generateVariantsAsync(String key);
+
+    /**
+     * Claves de todas las fotos guardadas (almacén por contenido y directorio plano antiguo), leídas
+     * de forma perezosa para poder recorrer directorios grandes por lotes.
+     */
+    Flux<String> listStoredKeys();
+
+    /**
+     * Borra la foto y sus miniaturas si su fichero es más antiguo que {@code gracePeriod}, para no
+     * tocar subidas cuya persona aún no se ha guardado, y si tras reclamarla sigue sin usarla ninguna
+     * persona. Devuelve los bytes liberados (0 si no se borró).
+     */
+    Mono<Long> deleteIfOrphaned(String key, Duration gracePeriod);
+
+    /**
+     * Borra los temporales de subidas interrumpidas más antiguos que {@code gracePeriod}. Devuelve los bytes liberados.
+     */
+    Mono<Long> purgeStaleUploads(Duration gracePeriod);
+
+    /**
+     * Mueve las fotos del antiguo directorio plano ({@code UUID-nombre}) al almacén por contenido y
+     * actualiza las personas que las usan. Devuelve cuántos ficheros se migraron.
+     */
+    Mono<Long> migrateFlatLayout();
+}
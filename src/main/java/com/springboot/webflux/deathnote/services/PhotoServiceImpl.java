@@ -0,0 +1,619 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import com.springboot.webflux.deathnote.repository.PhotoRefRepository;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Almacén de fotos direccionado por contenido. Cada foto se guarda una sola vez con el nombre
+ * {@code <sha256>.<ext>}, repartida en subdirectorios por prefijo del hash ({@code ab/cd/abcd....jpg})
+ * para que ningún directorio crezca sin límite, y con un contador de referencias en
+ * {@code photo_refs}: el fichero solo se borra al soltar la última. El hash se calcula mientras se
+ * escribe el upload, sin releer el fichero.
+ * <p>
+ * El contador hace de cerrojo entre nodos: una subida suma su referencia antes de dejar el fichero en
+ * su sitio, y el borrado reclama antes la foto en Mongo (ver {@link PhotoRefRepository}); solo quien
+ * la reclama toca los ficheros, y las subidas esperan a que termine para volver a crearla.
+ * <p>
+ * Las miniaturas se guardan en {@code thumbs/<tamaño>/} con el mismo reparto: se generan tras la
+ * subida y, para las fotos anteriores, en la primera petición. El escalado se hace en un pool
+ * acotado para no competir con el event loop.
+ */
+@Service
+public class PhotoServiceImpl implements PhotoService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoServiceImpl.class);
+
+    private static final String THUMBNAIL_DIR = "thumbs";
+    private static final String THUMBNAIL_FORMAT = "jpg";
+    private static final String TEMP_DIR = ".tmp";
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]{1,5}");
+
+    // Espera de una subida mientras otro nodo termina de borrar la misma foto
+    private static final Retry WHILE_CLAIMED = Retry.backoff(20, Duration.ofMillis(50))
+            .maxBackoff(Duration.ofSeconds(2))
+            .filter(DuplicateKeyException.class::isInstance);
+
+    @Autowired
+    private PhotoRefRepository photoRefRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    private final Path uploadRoot;
+    private final List<Integer> thumbnailSizes;
+    private final DataSize maxPhotoSize;
+    private final Scheduler thumbnailScheduler;
+    private final Scheduler photoIoScheduler;
+    private final ObservationRegistry observationRegistry;
+
+    // Una sola generación en curso por miniatura aunque lleguen varias peticiones a la vez
+    private final Map<Path, Mono<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public PhotoServiceImpl(@Value("${deathnote.upload.path:/tmp/deathnote_uploads}") String uploadPath,
+                            @Value("${deathnote.photos.max-size:5MB}") DataSize maxPhotoSize,
+                            @Value("${deathnote.photos.thumbnail-sizes:64,256}") List<Integer> thumbnailSizes,
+                            @Value("${deathnote.photos.thumbnail-workers:2}") int thumbnailWorkers,
+                            @Qualifier("photoIoScheduler") Scheduler photoIoScheduler,
+                            ObservationRegistry observationRegistry) {
+        this.uploadRoot = Paths.get(uploadPath).toAbsolutePath().normalize();
+        this.maxPhotoSize = maxPhotoSize;
+        this.photoIoScheduler = photoIoScheduler;
+        this.observationRegistry = observationRegistry;
+        this.thumbnailSizes = List.copyOf(thumbnailSizes);
+        this.thumbnailScheduler = Schedulers.newBoundedElastic(thumbnailWorkers, 1_000, "thumbnails");
+    }
+
+    @Override
+    public Mono<String> store(FilePart file) {
+        return Mono.fromCallable(() -> {
+                    Path tempDir = uploadRoot.resolve(TEMP_DIR);
+                    Files.createDirectories(tempDir);
+                    return Files.createTempFile(tempDir, "upload", ".tmp");
+                })
+                .subscribeOn(photoIoScheduler)
+                .flatMap(temp -> {
+                    MessageDigest digest = sha256();
+                    AtomicLong received = new AtomicLong();
+                    AtomicReference<String> format = new AtomicReference<>();
+                    // Se valida cada buffer al llegar: el formato por los primeros bytes (sin fiarse del
+                    // nombre ni del Content-Type del cliente) y el tamaño acumulado; al fallar se cancela la lectura.
+                    Flux<DataBuffer> content = file.content().handle((buffer, sink) -> {
+                        if (format.get() == null) {
+                            String detected = sniffFormat(buffer);
+                            if (detected == null) {
+                                DataBufferUtils.release(buffer);
+                                sink.error(new InvalidPhotoException("El archivo no es una imagen JPEG, PNG, GIF o WebP."));
+                                return;
+                            }
+                            format.set(detected);
+                        }
+                        if (received.addAndGet(buffer.readableByteCount()) > maxPhotoSize.toBytes()) {
+                            DataBufferUtils.release(buffer);
+                            sink.error(new InvalidPhotoException("La foto supera el tamaño máximo de " + maxPhotoSize.toMegabytes() + "MB."));
+                            return;
+                        }
+                        updateDigest(digest, buffer);
+                        sink.next(buffer);
+                    });
+                    // Span de la transferencia del upload al disco, hijo de la petición
+                    return DataBufferUtils.write(content, temp, StandardOpenOption.WRITE)
+                            .name("deathnote.photo.transfer")
+                            .tap(Micrometer.observation(observationRegistry))
+                            .then(Mono.fromCallable(() -> {
+                                if (format.get() == null) {
+                                    throw new InvalidPhotoException("El archivo de la foto está vacío.");
+                                }
+                                return HexFormat.of().formatHex(digest.digest()) + "." + format.get();
+                            }))
+                            .flatMap(key -> addReference(temp, key))
+                            .onErrorResume(e -> Mono.fromRunnable(() -> deleteQuietly(temp))
+                                    .subscribeOn(photoIoScheduler)
+                                    .then(Mono.error(e)));
+                });
+    }
+
+    @Override
+    public Mono<Void> release(String key) {
+        Path original = originalPath(key);
+        if (original == null) {
+            return Mono.empty();
+        }
+        if (!isContentKey(key)) {
+            // Foto del antiguo directorio plano, sin contador: era de una sola persona
+            return Mono.fromCallable(() -> deleteWithVariants(key, original))
+                    .subscribeOn(photoIoScheduler)
+                    .then();
+        }
+        return photoRefRepository.removeReference(key)
+                .flatMap(refs -> {
+                    if (refs > 0) {
+                        log.info("Foto {} liberada; quedan {} referencias.", key, refs);
+                        return Mono.empty();
+                    }
+                    return photoRefRepository.claimUnreferenced(key)
+                            .filter(Boolean::booleanValue)
+                            .flatMap(claimed -> deleteClaimed(key, original));
+                })
+                .then();
+    }
+
+    @Override
+    public Mono<Path> resolve(String key, Integer size) {
+        Path original = originalPath(key);
+        if (original == null) {
+            return Mono.empty();
+        }
+        if (size == null) {
+            return Mono.fromCallable(() -> Files.isRegularFile(original) ? original : null)
+                    .subscribeOn(photoIoScheduler);
+        }
+        if (!thumbnailSizes.contains(size)) {
+            return Mono.error(new IllegalArgumentException("Tamaño de miniatura no soportado: " + size));
+        }
+        Path thumbnail = thumbnailPath(key, size);
+        return Mono.fromCallable(() -> Files.isRegularFile(thumbnail))
+                .subscribeOn(photoIoScheduler)
+                .flatMap(exists -> exists ? Mono.just(thumbnail) : generateLazily(original, thumbnail, size));
+    }
+
+    @Override
+    public void generateVariantsAsync(String key) {
+        Path original = originalPath(key);
+        if (original == null) {
+            return;
+        }
+        Mono.fromCallable(() -> writeThumbnails(original, key))
+                .subscribeOn(thumbnailScheduler)
+                .name("deathnote.photo.thumbnails")
+                .tap(Micrometer.observation(observationRegistry))
+                .subscribe(
+                        generated -> {
+                            if (generated > 0) {
+                                log.info("{} miniaturas generadas para {}", generated, key);
+                            }
+                        },
+                        error -> log.warn("No se pudieron generar las miniaturas de {}: {}", key, error.getMessage()));
+    }
+
+    @Override
+    public Flux<String> listStoredKeys() {
+        Path thumbnails = uploadRoot.resolve(THUMBNAIL_DIR);
+        Path temps = uploadRoot.resolve(TEMP_DIR);
+        return Flux.using(
+                        () -> Files.isDirectory(uploadRoot) ? Files.walk(uploadRoot, 3) : Stream.<Path>empty(),
+                        paths -> Flux.fromStream(paths
+                                .filter(path -> !path.startsWith(thumbnails) && !path.startsWith(temps))
+                                .filter(Files::isRegularFile)
+                                // Solo la raíz (fotos antiguas) o el reparto por hash del almacén
+                                .filter(path -> path.equals(originalPath(path.getFileName().toString())))
+                                .map(path -> path.getFileName().toString())),
+                        Stream::close)
+                .subscribeOn(photoIoScheduler);
+    }
+
+    @Override
+    public Mono<Long> deleteIfOrphaned(String key, Duration gracePeriod) {
+        Path original = originalPath(key);
+        if (original == null) {
+            return Mono.just(0L);
+        }
+        Instant limit = Instant.now().minus(gracePeriod);
+        Mono<Boolean> stale = Mono.fromCallable(() -> Files.isRegularFile(original)
+                        && Files.getLastModifiedTime(original).toInstant().isBefore(limit))
+                .subscribeOn(photoIoScheduler);
+        if (!isContentKey(key)) {
+            // Foto del antiguo directorio plano, sin contador
+            return stale.flatMap(old -> old
+                    ? Mono.fromCallable(() -> deleteWithVariants(key, original)).subscribeOn(photoIoScheduler)
+                    : Mono.just(0L));
+        }
+        return stale
+                .filter(Boolean::booleanValue)
+                .flatMap(old -> photoRefRepository.claimOrphan(key, limit))
+                .filter(Boolean::booleanValue)
+                // Ya reclamada nadie puede sumarle referencias; se comprueba de nuevo que ninguna persona
+                // la use, por si se guardó alguna después de la pasada del recolector
+                .flatMap(claimed -> personRepository.countByFacePhoto(key))
+                .flatMap(users -> users > 0
+                        ? photoRefRepository.unclaim(key, users).thenReturn(0L)
+                        : deleteClaimed(key, original))
+                .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public Mono<Long> purgeStaleUploads(Duration gracePeriod) {
+        Path temps = uploadRoot.resolve(TEMP_DIR);
+        return Mono.fromCallable(() -> {
+                    if (!Files.isDirectory(temps)) {
+                        return 0L;
+                    }
+                    Instant limit = Instant.now().minus(gracePeriod);
+                    long bytes = 0;
+                    try (Stream<Path> files = Files.list(temps)) {
+                        for (Path temp : (Iterable<Path>) files::iterator) {
+                            if (Files.getLastModifiedTime(temp).toInstant().isBefore(limit)) {
+                                bytes += Files.size(temp);
+                                deleteQuietly(temp);
+                            }
+                        }
+                    }
+                    return bytes;
+                })
+                .subscribeOn(photoIoScheduler);
+    }
+
+    @Override
+    public Mono<Long> migrateFlatLayout() {
+        return Mono.fromCallable(() -> {
+                    if (!Files.isDirectory(uploadRoot)) {
+                        return List.<String>of();
+                    }
+                    try (Stream<Path> files = Files.list(uploadRoot)) {
+                        return files.filter(Files::isRegularFile).map(path -> path.getFileName().toString()).toList();
+                    }
+                })
+                .subscribeOn(photoIoScheduler)
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(name -> migrateLegacyPhoto(name)
+                        .onErrorResume(e -> {
+                            log.error("ERROR al migrar la foto {}: {}", name, e.getMessage());
+                            return Mono.just(false);
+                        }))
+                .filter(Boolean::booleanValue)
+                .count();
+    }
+
+    /**
+     * Copia la foto plana al almacén, apunta a ella las personas que la usaban, suma sus referencias
+     * y solo entonces borra el fichero antiguo; si se interrumpe, volver a ejecutarla la completa.
+     * Mientras se copia se mantiene una referencia provisional para que nadie borre el destino.
+     */
+    private Mono<Boolean> migrateLegacyPhoto(String name) {
+        Path legacy = uploadRoot.resolve(name);
+        return personRepository.countByFacePhoto(name).flatMap(users -> {
+            if (users == 0) {
+                log.info("Foto {} sin personas que la usen; se deja en su sitio.", name);
+                return Mono.just(false);
+            }
+            return Mono.fromCallable(() -> hashFile(legacy) + "." + extensionOf(name))
+                    .subscribeOn(photoIoScheduler)
+                    .flatMap(key -> photoRefRepository.addReferences(key, 1)
+                            .retryWhen(WHILE_CLAIMED)
+                            .then(Mono.fromRunnable(() -> copyIntoPlace(legacy, key)).subscribeOn(photoIoScheduler))
+                            .then(personRepository.replaceFacePhoto(name, key))
+                            // La provisional cuenta como la primera de las personas movidas
+                            .flatMap(moved -> moved > 0 ? photoRefRepository.addReferences(key, moved - 1).then() : release(key))
+                            .then(Mono.fromCallable(() -> deleteWithVariants(name, legacy)).subscribeOn(photoIoScheduler))
+                            .doOnSuccess(bytes -> log.info("Foto {} migrada a {}.", name, key))
+                            .thenReturn(true));
+        });
+    }
+
+    private void copyIntoPlace(Path legacy, String key) {
+        try {
+            Path target = originalPath(key);
+            if (!Files.exists(target)) {
+                Path temp = Files.createTempFile(Files.createDirectories(uploadRoot.resolve(TEMP_DIR)), "migrate", ".tmp");
+                Files.copy(legacy, temp, StandardCopyOption.REPLACE_EXISTING);
+                moveIntoPlace(temp, target);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Suma la referencia y, con ella ya contada, deja el upload en su sitio (o lo descarta si el
+     * contenido ya estaba): una vez sumada nadie puede reclamar la foto para borrarla.
+     */
+    private Mono<String> addReference(Path temp, String key) {
+        return photoRefRepository.addReferences(key, 1)
+                .retryWhen(WHILE_CLAIMED)
+                .then(Mono.fromCallable(() -> {
+                            Path target = originalPath(key);
+                            if (Files.exists(target)) {
+                                Files.delete(temp);
+                                // Renueva la fecha para que el recolector no la tome por huérfana antes de guardar la persona
+                                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                                log.info("Foto {} ya existía; se reutiliza.", key);
+                            } else {
+                                moveIntoPlace(temp, target);
+                            }
+                            return key;
+                        })
+                        .subscribeOn(photoIoScheduler)
+                        .onErrorResume(e -> release(key).onErrorResume(ignored -> Mono.empty()).then(Mono.error(e))));
+    }
+
+    /**
+     * Borra los ficheros de una foto que este nodo ha reclamado y después su contador. Si el borrado
+     * falla se suelta la reclamación, y la foto la recogerá el recolector. Devuelve los bytes liberados.
+     */
+    private Mono<Long> deleteClaimed(String key, Path original) {
+        return Mono.fromCallable(() -> deleteWithVariants(key, original))
+                .subscribeOn(photoIoScheduler)
+                .flatMap(bytes -> photoRefRepository.removeClaimed(key).thenReturn(bytes))
+                .onErrorResume(e -> photoRefRepository.unclaim(key, 0).then(Mono.error(e)));
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Mono<Path> generateLazily(Path original, Path thumbnail, int size) {
+        return inFlight.computeIfAbsent(thumbnail, key -> Mono.fromCallable(() -> {
+                    BufferedImage image = readSubsampled(original, size);
+                    writeJpeg(scale(image, size), thumbnail);
+                    log.info("Miniatura de {}px generada bajo demanda: {}", size, thumbnail.getFileName());
+                    return thumbnail;
+                })
+                .subscribeOn(thumbnailScheduler)
+                .onErrorResume(NoSuchFileException.class, e -> Mono.empty())
+                .doFinally(signal -> inFlight.remove(key))
+                .cache());
+    }
+
+    private int writeThumbnails(Path original, String key) throws IOException {
+        // Con contenido repetido las miniaturas ya existen
+        List<Integer> missing = thumbnailSizes.stream()
+                .filter(size -> !Files.exists(thumbnailPath(key, size)))
+                .toList();
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        // Una sola decodificación, submuestreada para el tamaño mayor
+        int largest = missing.stream().max(Integer::compareTo).orElseThrow();
+        BufferedImage image = readSubsampled(original, largest);
+        for (int size : missing) {
+            writeJpeg(scale(image, size), thumbnailPath(key, size));
+        }
+        return missing.size();
+    }
+
+    /**
+     * Decodifica la imagen leyendo solo uno de cada N píxeles, de modo que una foto de varios
+     * megapíxeles no se carga entera en memoria para producir una miniatura pequeña.
+     */
+    private static BufferedImage readSubsampled(Path original, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            if (input == null) {
+                throw new NoSuchFileException(original.toString());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Formato de imagen no soportado: " + original.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longestSide / (targetSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Escala para que el lado mayor mida {@code size} (sin ampliar) sobre fondo blanco, ya que JPEG no
+     * admite transparencia.
+     */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Escribe en un temporal y lo mueve, para que nunca se sirva una miniatura a medio escribir.
+     */
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "thumb", ".tmp");
+        try {
+            if (!ImageIO.write(image, THUMBNAIL_FORMAT, temp.toFile())) {
+                throw new IOException("No hay escritor de imágenes " + THUMBNAIL_FORMAT);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Ruta de la foto original, o null si la clave no es válida. Las fotos del antiguo directorio
+     * plano se resuelven en la raíz hasta que se migran.
+     */
+    private Path originalPath(String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        if (isContentKey(key)) {
+            return sharded(uploadRoot, key);
+        }
+        Path path = uploadRoot.resolve(key).normalize();
+        if (!uploadRoot.equals(path.getParent())) {
+            log.warn("Ruta de foto rechazada: {}", key);
+            return null;
+        }
+        return path;
+    }
+
+    private Path thumbnailPath(String key, int size) {
+        Path sizeDir = uploadRoot.resolve(THUMBNAIL_DIR).resolve(Integer.toString(size));
+        String thumbnail = key + "." + THUMBNAIL_FORMAT;
+        return isContentKey(key) ? sharded(sizeDir, key).resolveSibling(thumbnail) : sizeDir.resolve(thumbnail);
+    }
+
+    private static Path sharded(Path base, String key) {
+        return base.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static boolean isContentKey(String key) {
+        return CONTENT_KEY.matcher(key).matches();
+    }
+
+    /**
+     * Extensión del nombre de una foto antigua; las nuevas la toman de la firma de su contenido.
+     */
+    private static String extensionOf(String filename) {
+        int dot = filename != null ? filename.lastIndexOf('.') : -1;
+        String extension = dot >= 0 ? filename.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        return extension.matches("[a-z0-9]{1,5}") ? extension : "bin";
+    }
+
+    /**
+     * Extensión según la firma del inicio del fichero, o null si no es un formato de imagen admitido.
+     */
+    private static String sniffFormat(DataBuffer buffer) {
+        int length = Math.min(buffer.readableByteCount(), 12);
+        byte[] head = new byte[length];
+        int start = buffer.readPosition();
+        for (int i = 0; i < length; i++) {
+            head[i] = buffer.getByte(start + i);
+        }
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (startsWith(head, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "png";
+        }
+        if (startsWith(head, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (length == 12 && startsWith(head, 'R', 'I', 'F', 'F')
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int... signature) {
+        if (head.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void updateDigest(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+            buffers.forEachRemaining(digest::update);
+        }
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Borra la foto y sus miniaturas. Devuelve el tamaño del original, o 0 si ya no estaba.
+     */
+    private long deleteWithVariants(String key, Path original) throws IOException {
+        long bytes = Files.isRegularFile(original) ? Files.size(original) : 0L;
+        deleteQuietly(original);
+        thumbnailSizes.forEach(size -> deleteQuietly(thumbnailPath(key, size)));
+        return bytes;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                log.info("Archivo de foto {} eliminado.", path.getFileName());
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el archivo de foto {}: {}", path.getFileName(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        thumbnailScheduler.dispose();
+    }
+}
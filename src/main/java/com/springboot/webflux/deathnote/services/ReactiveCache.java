@@ -0,0 +1,72 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caché de lectura sobre un {@link AsyncCache} de Caffeine. Varias lecturas simultáneas de la misma
+ * clave comparten una sola carga, y los resultados vacíos o con error no se guardan. Desactivada,
+ * cada lectura va directa al cargador.
+ * <p>
+ * Para valores mutables se indica una función de copia: cada lectura recibe su propia copia, de modo
+ * que quien la modifique antes de guardarla no altera lo que ven las demás lecturas si el guardado falla.
+ */
+public class ReactiveCache<K, V> {
+
+    private final String name;
+    private final AsyncCache<K, V> cache;
+    private final UnaryOperator<V> copy;
+
+    public ReactiveCache(String name, AsyncCache<K, V> cache) {
+        this(name, cache, UnaryOperator.identity());
+    }
+
+    public ReactiveCache(String name, AsyncCache<K, V> cache, UnaryOperator<V> copy) {
+        this.name = name;
+        this.cache = cache;
+        this.copy = copy;
+    }
+
+    public static <K, V> ReactiveCache<K, V> disabled(String name) {
+        return new ReactiveCache<>(name, null);
+    }
+
+    public Mono<V> get(K key, Function<? super K, Mono<V>> loader) {
+        if (cache == null) {
+            return loader.apply(key);
+        }
+        // suppressCancel: cancelar una lectura no debe cancelar la carga que comparten las demás
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> loader.apply(k).toFuture()), true)
+                .map(copy);
+    }
+
+    public void invalidate(K key) {
+        if (cache != null && key != null) {
+            cache.synchronous().invalidate(key);
+        }
+    }
+
+    public void invalidateAll(Collection<? extends K> keys) {
+        if (cache != null) {
+            cache.synchronous().invalidateAll(keys);
+        }
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.synchronous().invalidateAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
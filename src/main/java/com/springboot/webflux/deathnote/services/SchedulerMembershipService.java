@@ -0,0 +1,144 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.model.SchedulerNode;
+import com.springboot.webflux.deathnote.repository.SchedulerNodeRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Pertenencia de esta instancia al grupo de schedulers. Con el modo cluster activo, cada nodo
+ * renueva un lease en la colección scheduler_nodes y las muertes pendientes se reparten entre los
+ * nodos vivos por hash del id de la persona. Sin modo cluster, este nodo es dueño de todo.
+ */
+@Service
+public class SchedulerMembershipService {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerMembershipService.class);
+
+    @Autowired
+    private SchedulerNodeRepository schedulerNodeRepository;
+
+    @Value("${deathnote.scheduler.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Value("${deathnote.scheduler.cluster.heartbeat-interval:PT5S}")
+    private Duration heartbeatInterval;
+
+    @Value("${deathnote.scheduler.cluster.lease-ttl:PT15S}")
+    private Duration leaseTtl;
+
+    private final String nodeId;
+
+    // Sin node-id configurado se genera uno nuevo en cada arranque
+    private final boolean nodeIdConfigured;
+
+    private volatile List<String> liveNodes = List.of();
+
+    private final Sinks.Many<List<String>> membershipChanges = Sinks.many().replay().latest();
+
+    private Disposable heartbeat;
+
+    public SchedulerMembershipService(@Value("${deathnote.scheduler.cluster.node-id:}") String configuredNodeId) {
+        this.nodeIdConfigured = configuredNodeId != null && !configuredNodeId.isBlank();
+        this.nodeId = nodeIdConfigured ? configuredNodeId : UUID.randomUUID().toString();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        if (!clusterEnabled) {
+            updateMembership(List.of(nodeId));
+            return;
+        }
+        log.info("Nodo de scheduler {} uniéndose al cluster (latido cada {}, lease {}).", nodeId, heartbeatInterval, leaseTtl);
+        heartbeat = Flux.interval(Duration.ZERO, heartbeatInterval)
+                .onBackpressureDrop() // Si una renovación tarda más que el latido, se omiten los ticks intermedios
+                .concatMap(tick -> renewLease()
+                        .timeout(leaseTtl)
+                        .onErrorResume(error -> {
+                            log.error("ERROR al renovar el lease del nodo {}: {}", nodeId, error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe(this::updateMembership);
+    }
+
+    private Mono<List<String>> renewLease() {
+        Date now = new Date();
+        return schedulerNodeRepository.save(new SchedulerNode(nodeId, new Date(now.getTime() + leaseTtl.toMillis())))
+                .thenMany(schedulerNodeRepository.findAllByExpiresAtAfterOrderByIdAsc(now))
+                .map(SchedulerNode::getId)
+                .collectList();
+    }
+
+    private void updateMembership(List<String> nodes) {
+        if (nodes.equals(liveNodes)) {
+            return;
+        }
+        log.info("Nodos de scheduler vivos: {} (este nodo: {}).", nodes, nodeId);
+        liveNodes = nodes;
+        membershipChanges.tryEmitNext(nodes);
+    }
+
+    /**
+     * Emite la lista de nodos vivos cada vez que cambia, empezando por la actual.
+     */
+    public Flux<List<String>> membershipChanges() {
+        return membershipChanges.asFlux();
+    }
+
+    /**
+     * Indica si la muerte de la persona le toca a este nodo según el reparto por hash actual.
+     */
+    public boolean owns(String personId) {
+        List<String> nodes = liveNodes;
+        int index = nodes.indexOf(nodeId);
+        if (index < 0) {
+            return nodes.isEmpty();
+        }
+        return Math.floorMod(personId.hashCode(), nodes.size()) == index;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Si el id se mantiene entre reinicios; solo así se puede recuperar lo guardado con él.
+     */
+    public boolean isNodeIdConfigured() {
+        return nodeIdConfigured;
+    }
+
+    public List<String> getLiveNodes() {
+        return liveNodes;
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.dispose();
+        // Liberar el lease para que el resto reparta las muertes sin esperar a que venza
+        schedulerNodeRepository.deleteById(nodeId)
+                .onErrorResume(error -> {
+                    log.warn("No se pudo liberar el lease del nodo {}: {}", nodeId, error.getMessage());
+                    return Mono.empty();
+                })
+                .block(Duration.ofSeconds(5));
+    }
+}
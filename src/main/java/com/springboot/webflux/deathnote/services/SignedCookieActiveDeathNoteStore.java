@@ -0,0 +1,127 @@
+package com.springboot.webflux.deathnote.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Death Note activa en una cookie {@code <id>.<caducidad>.<firma>} firmada con HMAC-SHA256: el
+ * servidor no guarda estado y cualquier réplica con el mismo secreto la acepta. Una cookie
+ * manipulada o caducada se trata como si no hubiera Death Note activa.
+ * <p>
+ * Exige deathnote.session.cookie.secret con al menos {@value #MIN_SECRET_BYTES} bytes (los de la
+ * salida de SHA-256): sin él la aplicación no arranca, ya que un secreto aleatorio por nodo no
+ * serviría con varias réplicas ni sobreviviría a un reinicio.
+ */
+@Service
+@ConditionalOnProperty(name = "deathnote.session.store", havingValue = "cookie")
+public class SignedCookieActiveDeathNoteStore implements ActiveDeathNoteStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SignedCookieActiveDeathNoteStore.class);
+
+    static final String COOKIE_NAME = "DN_ACTIVE";
+
+    private static final String HMAC = "HmacSHA256";
+
+    static final int MIN_SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Mac prototype;
+    private final Duration ttl;
+    private final boolean secure;
+
+    public SignedCookieActiveDeathNoteStore(@Value("${deathnote.session.cookie.secret:}") String secret,
+                                            @Value("${deathnote.session.ttl:PT12H}") Duration ttl,
+                                            @Value("${deathnote.session.cookie.secure:false}") boolean secure) {
+        this.ttl = ttl;
+        this.secure = secure;
+        byte[] key = secret == null || secret.isBlank() ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        if (key.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("deathnote.session.store=cookie necesita deathnote.session.cookie.secret con al menos "
+                    + MIN_SECRET_BYTES + " bytes (tiene " + key.length + ").");
+        }
+        try {
+            prototype = Mac.getInstance(HMAC);
+            prototype.init(new SecretKeySpec(key, HMAC));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo inicializar " + HMAC, e);
+        }
+    }
+
+    @Override
+    public Mono<String> get(ServerWebExchange exchange) {
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(COOKIE_NAME);
+        return cookie == null ? Mono.empty() : Mono.justOrEmpty(verify(cookie.getValue()));
+    }
+
+    @Override
+    public Mono<Void> set(ServerWebExchange exchange, String deathNoteId) {
+        long expires = Instant.now().plus(ttl).getEpochSecond();
+        String payload = deathNoteId + "." + expires;
+        exchange.getResponse().addCookie(cookie(payload + "." + sign(payload), ttl));
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Void> clear(ServerWebExchange exchange) {
+        exchange.getResponse().addCookie(cookie("", Duration.ZERO));
+        return Mono.empty();
+    }
+
+    String verify(String value) {
+        int signatureStart = value.lastIndexOf('.');
+        int expiresStart = signatureStart > 0 ? value.lastIndexOf('.', signatureStart - 1) : -1;
+        if (expiresStart <= 0) {
+            return null;
+        }
+        String payload = value.substring(0, signatureStart);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = value.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            log.debug("Cookie de Death Note activa con firma inválida.");
+            return null;
+        }
+        try {
+            long expires = Long.parseLong(value.substring(expiresStart + 1, signatureStart));
+            return Instant.now().getEpochSecond() < expires ? value.substring(0, expiresStart) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String sign(String payload) {
+        try {
+            // Mac no es thread-safe: cada firma usa una copia ya inicializada
+            Mac mac = (Mac) prototype.clone();
+            return ENCODER.encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+}
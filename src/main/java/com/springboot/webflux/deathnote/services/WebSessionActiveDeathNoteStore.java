@@ -0,0 +1,36 @@
+package com.springboot.webflux.deathnote.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Death Note activa en la {@code WebSession} en memoria: el visitante queda ligado al nodo que creó
+ * su sesión y la pierde al reiniciar.
+ */
+@Service
+@ConditionalOnProperty(name = "deathnote.session.store", havingValue = "memory", matchIfMissing = true)
+public class WebSessionActiveDeathNoteStore implements ActiveDeathNoteStore {
+
+    static final String ACTIVE_DEATH_NOTE_ID = "ACTIVE_DEATH_NOTE_ID";
+
+    @Override
+    public Mono<String> get(ServerWebExchange exchange) {
+        return exchange.getSession().mapNotNull(session -> session.getAttribute(ACTIVE_DEATH_NOTE_ID));
+    }
+
+    @Override
+    public Mono<Void> set(ServerWebExchange exchange, String deathNoteId) {
+        return exchange.getSession()
+                .doOnNext(session -> session.getAttributes().put(ACTIVE_DEATH_NOTE_ID, deathNoteId))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> clear(ServerWebExchange exchange) {
+        return exchange.getSession()
+                .doOnNext(session -> session.getAttributes().remove(ACTIVE_DEATH_NOTE_ID))
+                .then();
+    }
+}
@@ -0,0 +1,108 @@
+package com.springboot.webflux.deathnote;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Infraestructura común de los tests. Un único Mongo en memoria por JVM (y otro con oplog para los
+ * change streams); cada clase de test usa su propia base de datos, así que los contextos que Spring
+ * guarda en caché siguen apuntando a un servidor vivo. Los servidores se paran al salir la JVM.
+ */
+public final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    /**
+     * Apunta {@code spring.data.mongodb.uri} a {@code database} en el Mongo en memoria compartido.
+     * Devuelve la URI, para los tests que arrancan instancias adicionales de la app.
+     */
+    public static String registerMongo(DynamicPropertyRegistry registry, String database) {
+        String uri = mongoUri(database);
+        registry.add("spring.data.mongodb.uri", () -> uri);
+        return uri;
+    }
+
+    /**
+     * Como {@link #registerMongo}, pero en un servidor con oplog, necesario para los change streams.
+     */
+    public static String registerMongoWithOplog(DynamicPropertyRegistry registry, String database) {
+        String uri = oplogMongoUri(database);
+        registry.add("spring.data.mongodb.uri", () -> uri);
+        return uri;
+    }
+
+    public static String mongoUri(String database) {
+        return SharedMongo.ADDRESS + database;
+    }
+
+    public static String oplogMongoUri(String database) {
+        return OplogMongo.ADDRESS + database;
+    }
+
+    public static Path tempDirectory(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Firma PNG seguida de {@code body}: pasa la validación de subida y cada cuerpo da una clave distinta.
+     */
+    public static byte[] png(String body) {
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        byte[] content = Arrays.copyOf(signature, signature.length + bytes.length);
+        System.arraycopy(bytes, 0, content, signature.length, bytes.length);
+        return content;
+    }
+
+    /**
+     * PNG real de {@code width}x{@code height}, para los caminos que decodifican la imagen (miniaturas).
+     */
+    public static byte[] png(int width, int height) {
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", png);
+            return png.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String start(MemoryBackend backend) {
+        MongoServer server = new MongoServer(backend);
+        InetSocketAddress address = server.bind();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow, "test-mongo-shutdown"));
+        return "mongodb://localhost:" + address.getPort() + "/";
+    }
+
+    // Se arrancan la primera vez que un test los usa
+    private static final class SharedMongo {
+        private static final String ADDRESS = start(new MemoryBackend());
+    }
+
+    private static final class OplogMongo {
+        private static final String ADDRESS = start(withOplog());
+
+        private static MemoryBackend withOplog() {
+            MemoryBackend backend = new MemoryBackend();
+            backend.enableOplog();
+            return backend;
+        }
+    }
+}
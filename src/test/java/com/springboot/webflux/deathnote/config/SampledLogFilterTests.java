@@ -0,0 +1,62 @@
+package com.springboot.webflux.deathnote.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.KeyValuePair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Las líneas marcadas como muestreadas deben limitarse por plantilla y segundo, también con la API
+ * fluida de SLF4J, sin tocar las no marcadas ni los WARN.
+ */
+class SampledLogFilterTests {
+
+    private static final int PERMITS = 3;
+
+    private final LoggerContext context = new LoggerContext();
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+    private Logger log;
+
+    @BeforeEach
+    void setUp() {
+        SampledLogFilter filter = new SampledLogFilter();
+        filter.setPermitsPerSecond(PERMITS);
+        filter.start();
+
+        events.setContext(context);
+        events.addFilter(filter);
+        events.start();
+        log = context.getLogger("sampled");
+        log.addAppender(events);
+    }
+
+    @Test
+    void sampledEvents_shouldBeLimitedPerTemplate() {
+        for (int i = 0; i < 50; i++) {
+            log.atInfo().addMarker(SampledLogFilter.SAMPLED).setMessage("Persona anotada").addKeyValue("n", i).log();
+            log.atInfo().addMarker(SampledLogFilter.SAMPLED).setMessage("Muerte especificada").log();
+        }
+
+        // Si el segundo cambia a mitad del bucle la ventana se reabre una vez
+        assertThat(events.list.stream().filter(event -> event.getMessage().equals("Persona anotada")).count())
+                .isBetween((long) PERMITS, 2L * PERMITS);
+        assertThat(events.list.stream().filter(event -> event.getMessage().equals("Muerte especificada")).count())
+                .isBetween((long) PERMITS, 2L * PERMITS);
+        assertThat(events.list.get(0).getKeyValuePairs()).extracting(KeyValuePair::toString).containsExactly("n=\"0\"");
+    }
+
+    @Test
+    void unmarkedAndWarnEvents_shouldNotBeSampled() {
+        for (int i = 0; i < 50; i++) {
+            log.info("Sin muestreo {}", i);
+            log.atWarn().addMarker(SampledLogFilter.SAMPLED).setMessage("Aviso").log();
+        }
+
+        assertThat(events.list).hasSize(100);
+    }
+}
@@ -0,0 +1,88 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.model.Person;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Compara la memoria asignada al renderizar 100k filas pasando el nombre a mayúsculas en el
+ * controlador (como antes) con usar el displayName guardado. Se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ListRenderingBenchmarkTests {
+
+    private static final int ROWS = 100_000;
+    private static final int ITERATIONS = 5;
+
+    private static final String MAPPED_NAME_TEMPLATE =
+            "<table><tr th:each=\"p : ${people}\"><td th:text=\"${p.name}\"></td></tr></table>";
+    private static final String DISPLAY_NAME_TEMPLATE =
+            "<table><tr th:each=\"p : ${people}\"><td th:text=\"${p.displayName}\"></td></tr></table>";
+
+    private final SpringTemplateEngine engine = newEngine();
+
+    @Test
+    void compareUpperCasingInControllerWithStoredDisplayName() {
+        List<Person> stored = IntStream.range(0, ROWS)
+                .mapToObj(i -> {
+                    Person person = new Person();
+                    person.setName("Persona número " + i);
+                    person.setDisplayName(person.getName().toUpperCase(Locale.ROOT));
+                    return person;
+                })
+                .toList();
+
+        Supplier<List<Person>> mapped = () -> stored.stream()
+                .map(person -> {
+                    Person copy = new Person();
+                    copy.setName(person.getName().toUpperCase());
+                    return copy;
+                })
+                .toList();
+
+        long[] before = measure(MAPPED_NAME_TEMPLATE, mapped);
+        long[] after = measure(DISPLAY_NAME_TEMPLATE, () -> stored);
+
+        System.out.printf("BENCHMARK: %d filas; mapeo en controlador %d ms / %d KB por render, displayName %d ms / %d KB por render%n",
+                ROWS, before[0], before[1] / 1024, after[0], after[1] / 1024);
+    }
+
+    /**
+     * Devuelve el tiempo medio (ms) y los bytes asignados medios por render, tras una pasada de calentamiento.
+     */
+    private long[] measure(String template, Supplier<List<Person>> people) {
+        render(template, people.get());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            render(template, people.get());
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000 / ITERATIONS;
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+        return new long[]{elapsedMillis, allocated};
+    }
+
+    private void render(String template, List<Person> people) {
+        Context context = new Context();
+        context.setVariable("people", people);
+        engine.process(template, context, Writer.nullWriter());
+    }
+
+    private static SpringTemplateEngine newEngine() {
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(new StringTemplateResolver());
+        return engine;
+    }
+}
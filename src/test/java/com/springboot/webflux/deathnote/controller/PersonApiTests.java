@@ -0,0 +1,203 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Owner;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.repository.OwnerRepository;
+import com.springboot.webflux.deathnote.services.PersonImportService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La API JSON debe cubrir el ciclo de vida de una persona sin formularios ni redirecciones.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PersonApiTests {
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_api");
+    }
+
+    @Test
+    void personLifecycle_shouldWorkWithJsonRequests() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", null)).block(Duration.ofSeconds(5));
+
+        PersonApiHandler.PersonResource created = webClient.post().uri("/api/persons")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "Raye Penber", "deathDetails", "Metro", "deathNoteId", deathNote.getId()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueMatches("Location", "/api/persons/.+")
+                .expectBody(PersonApiHandler.PersonResource.class)
+                .returnResult().getResponseBody();
+        Assertions.assertThat(created.status()).isEqualTo("PENDING_HEART_ATTACK");
+
+        webClient.get().uri("/api/persons/{id}", created.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.name").isEqualTo("Raye Penber")
+                .jsonPath("$.causeOfDeath").doesNotExist();
+
+        LocalDateTime future = LocalDateTime.now().plusDays(1).withNano(0);
+        webClient.put().uri("/api/persons/{id}/death", created.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("deathDate", future.toString(), "deathDetails", "Tren"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.status").isEqualTo("DEATH_SCHEDULED_EXPLICITLY");
+
+        webClient.get().uri("/api/deathnotes")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[?(@.id == '" + deathNote.getId() + "')].personCount").isEqualTo(1);
+
+        webClient.delete().uri("/api/persons/{id}", created.id())
+                .exchange()
+                .expectStatus().isNoContent();
+        webClient.get().uri("/api/persons/{id}", created.id())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.error").exists();
+    }
+
+    @Test
+    void createPerson_shouldCheckTheDeathNoteBeforeSaving() {
+        Owner owner = ownerRepository.save(new Owner("Teru Mikami", false, null, null)).block(Duration.ofSeconds(5));
+        DeathNote owned = new DeathNote("ryuk", owner.getId());
+        deathNoteRepository.save(owned).block(Duration.ofSeconds(5));
+
+        webClient.post().uri("/api/persons")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "Teru Mikami", "deathNoteId", owned.getId()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody().jsonPath("$.error").isEqualTo("El propietario no puede escribir su propio nombre.");
+        webClient.post().uri("/api/persons")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "Hitoshi Demegawa", "deathNoteId", "no-existe"))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        // Ninguna de las dos peticiones dejó una persona guardada
+        Assertions.assertThat(mongoTemplate.count(Query.query(Criteria.where("name").in("Teru Mikami", "Hitoshi Demegawa")), Person.class)
+                .block(Duration.ofSeconds(5))).isZero();
+        Assertions.assertThat(deathNoteRepository.findById(owned.getId()).block(Duration.ofSeconds(5)).getPersonCount()).isZero();
+    }
+
+    @Test
+    void rejectOwnership_shouldTellMissingFromConflicting() {
+        ownerRepository.deleteAll().block(Duration.ofSeconds(5));
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", "owner-que-no-existe")).block(Duration.ofSeconds(5));
+
+        webClient.post().uri("/api/deathnotes/{id}/reject", deathNote.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.error").isEqualTo("No se encontró ningún propietario");
+
+        ownerRepository.save(new Owner("Kiyomi Takada", false, null, null)).block(Duration.ofSeconds(5));
+        webClient.post().uri("/api/deathnotes/{id}/reject", deathNote.getId())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void listPersons_shouldPageJsonAndStreamNdjson() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("sidoh", null)).block(Duration.ofSeconds(5));
+        for (int i = 0; i < 3; i++) {
+            webClient.post().uri("/api/persons")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("name", "Lista " + i, "deathNoteId", deathNote.getId()))
+                    .exchange()
+                    .expectStatus().isCreated();
+        }
+
+        webClient.get().uri("/api/persons?deathNoteId={id}&size=2", deathNote.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.items.length()").isEqualTo(2)
+                .jsonPath("$.next").exists();
+
+        List<PersonApiHandler.PersonResource> streamed = webClient.get().uri("/api/persons?deathNoteId={id}", deathNote.getId())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(PersonApiHandler.PersonResource.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        Assertions.assertThat(streamed).hasSize(3);
+
+        webClient.get().uri("/api/persons?size=abc")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void importPeople_shouldReportEveryRowAndCountOncePerBatch() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("gelus", null)).block(Duration.ofSeconds(5));
+        String ndjson = """
+                {"name": "Kiichi Higuchi"}
+                {"name": ""}
+                no es json
+                {"name": "Kyosuke Higuchi", "deathDetails": "Accidente"}
+                """;
+
+        List<PersonImportService.ImportResult> ndjsonResults = importRows(deathNote, MediaType.APPLICATION_NDJSON, ndjson);
+        Assertions.assertThat(ndjsonResults).hasSize(4);
+        Assertions.assertThat(ndjsonResults).filteredOn(result -> result.id() != null)
+                .extracting(PersonImportService.ImportResult::line).containsExactlyInAnyOrder(1L, 4L);
+        Assertions.assertThat(ndjsonResults).filteredOn(result -> result.error() != null)
+                .extracting(PersonImportService.ImportResult::line).containsExactlyInAnyOrder(2L, 3L);
+
+        String csv = "name,deathDetails\r\n\"Ryuzaki, L\",\"Dijo \"\"adiós\"\"\"\r\nWatari,\r\n";
+        List<PersonImportService.ImportResult> csvResults = importRows(deathNote, PersonApiHandler.TEXT_CSV, csv);
+        Assertions.assertThat(csvResults).extracting(PersonImportService.ImportResult::name)
+                .containsExactlyInAnyOrder("Ryuzaki, L", "Watari");
+
+        DeathNote updated = deathNoteRepository.findById(deathNote.getId()).block(Duration.ofSeconds(5));
+        Assertions.assertThat(updated.getPersonCount()).isEqualTo(4);
+    }
+
+    private List<PersonImportService.ImportResult> importRows(DeathNote deathNote, MediaType contentType, String body) {
+        return webClient.post().uri("/api/persons/bulk?deathNoteId={id}", deathNote.getId())
+                .contentType(contentType)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(PersonImportService.ImportResult.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,279 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.services.PersonService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Prueba de carga de extremo a extremo de {@code /persons/add}, {@code /listNames} y {@code /view/{id}}.
+ * Levanta la app en un puerto aleatorio contra un Mongo en memoria (o el de
+ * {@code -Ddeathnote.load.mongo-uri}) y lanza la mezcla de peticiones a ritmo constante y en bucle
+ * abierto: la latencia se mide desde el instante en que la petición debía salir, así que las colas del
+ * servidor cuentan (sin omisión coordinada). Falla si el p99 de alguna operación supera el umbral o si
+ * el throughput conseguido queda por debajo del objetivo.
+ * <p>
+ * Se ejecuta con {@code mvn test -Pload}; ritmo, duración, mezcla y umbrales se cambian con
+ * {@code -Ddeathnote.load.*}. Los histogramas se guardan en {@code target/load/}.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PersonLoadTests {
+
+    // Hasta un minuto en microsegundos, con tres cifras significativas
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private enum Operation { ADD, LIST, VIEW }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @Autowired
+    private PersonService personService;
+
+    @Value("${deathnote.load.rate:50}")
+    private int rate;
+
+    @Value("${deathnote.load.warmup:PT5S}")
+    private Duration warmup;
+
+    @Value("${deathnote.load.duration:PT20S}")
+    private Duration duration;
+
+    // Pesos de la mezcla: altas, listados y detalles
+    @Value("${deathnote.load.mix.add:1}")
+    private int addWeight;
+
+    @Value("${deathnote.load.mix.list:4}")
+    private int listWeight;
+
+    @Value("${deathnote.load.mix.view:5}")
+    private int viewWeight;
+
+    @Value("${deathnote.load.seed-people:500}")
+    private int seedPeople;
+
+    @Value("${deathnote.load.max-connections:256}")
+    private int maxConnections;
+
+    @Value("${deathnote.load.max-p99:PT0.5S}")
+    private Duration maxP99;
+
+    @Value("${deathnote.load.min-throughput-ratio:0.95}")
+    private double minThroughputRatio;
+
+    @Value("${deathnote.load.max-error-ratio:0.001}")
+    private double maxErrorRatio;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        String mongoUri = System.getProperty("deathnote.load.mongo-uri");
+        if (mongoUri == null) {
+            TestSupport.registerMongo(registry, "death_note_load");
+        } else {
+            registry.add("spring.data.mongodb.uri", () -> mongoUri);
+        }
+        registry.add("deathnote.upload.path", () -> TestSupport.tempDirectory("deathnote-load-uploads").toString());
+    }
+
+    @Test
+    void mixedLoad_shouldMeetLatencyAndThroughputTargets() throws IOException {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", null)).block(Duration.ofSeconds(10));
+        List<String> ids = personService.saveInitialEntries(IntStream.range(0, seedPeople)
+                        .mapToObj(i -> new Person("Persona semilla " + i, null, null, null, deathNote.getId()))
+                        .toList())
+                .map(Person::getId)
+                .collectList()
+                .block(Duration.ofMinutes(1));
+
+        ConnectionProvider connections = ConnectionProvider.builder("load")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        WebClient client = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+        String session = selectDeathNote(client, deathNote.getId());
+        byte[] photo = TestSupport.png(64, 64);
+
+        Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3));
+            errors.put(operation, new AtomicLong());
+        }
+
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long warmupRequests = warmup.toNanos() / periodNanos;
+        long totalRequests = warmupRequests + duration.toNanos() / periodNanos;
+        AtomicLong sequence = new AtomicLong();
+        long start = System.nanoTime();
+
+        // El búfer mantiene el ritmo aunque el servidor se retrase; ese retraso aparece en la latencia.
+        // Sin retraso inicial el tick n sale en start + n * periodo, que es lo que se toma como inicio previsto.
+        Flux.interval(Duration.ZERO, Duration.ofNanos(periodNanos))
+                .take(totalRequests)
+                .onBackpressureBuffer()
+                .flatMap(tick -> {
+                    long intendedStart = start + tick * periodNanos;
+                    boolean measured = tick >= warmupRequests;
+                    Operation operation = pick();
+                    return send(client, session, operation, ids, photo, sequence.incrementAndGet())
+                            .onErrorReturn(false)
+                            .doOnNext(ok -> {
+                                if (!measured) {
+                                    return;
+                                }
+                                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                                latencies.get(operation).recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+                                if (!ok) {
+                                    errors.get(operation).incrementAndGet();
+                                }
+                            });
+                }, maxConnections)
+                .blockLast(warmup.plus(duration).multipliedBy(3));
+        long measuredNanos = System.nanoTime() - start - warmup.toNanos();
+        connections.dispose();
+
+        report(latencies, errors, measuredNanos);
+
+        long completed = latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        long failed = errors.values().stream().mapToLong(AtomicLong::get).sum();
+        double throughput = completed * 1e9 / measuredNanos;
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(throughput)
+                .as("throughput (req/s) con objetivo %d", rate)
+                .isGreaterThanOrEqualTo(rate * minThroughputRatio);
+        softly.assertThat((double) failed / Math.max(1, completed))
+                .as("proporción de errores")
+                .isLessThanOrEqualTo(maxErrorRatio);
+        latencies.forEach((operation, histogram) -> softly.assertThat(histogram.getValueAtPercentile(99))
+                .as("p99 de %s (µs)", operation)
+                .isLessThanOrEqualTo(maxP99.toNanos() / 1000));
+        softly.assertAll();
+    }
+
+    private Operation pick() {
+        int roll = ThreadLocalRandom.current().nextInt(addWeight + listWeight + viewWeight);
+        if (roll < addWeight) {
+            return Operation.ADD;
+        }
+        return roll < addWeight + listWeight ? Operation.LIST : Operation.VIEW;
+    }
+
+    /**
+     * Lanza una petición y emite si la respuesta fue la esperada: redirección con {@code success} para
+     * las altas y 200 para las lecturas. El cuerpo se consume entero para medir también el renderizado.
+     */
+    private Mono<Boolean> send(WebClient client, String session, Operation operation, List<String> ids, byte[] photo, long n) {
+        WebClient.RequestHeadersSpec<?> request = switch (operation) {
+            case ADD -> {
+                MultipartBodyBuilder body = new MultipartBodyBuilder();
+                body.part("name", "Persona de carga " + n);
+                body.part("file", new ByteArrayResource(photo) {
+                    @Override
+                    public String getFilename() {
+                        return "cara.png";
+                    }
+                }).contentType(MediaType.IMAGE_PNG);
+                yield client.post().uri("/persons/add")
+                        .cookie("SESSION", session)
+                        .body(BodyInserters.fromMultipartData(body.build()));
+            }
+            case LIST -> client.get().uri("/listNames").cookie("SESSION", session);
+            case VIEW -> client.get().uri("/view/{id}", ids.get(ThreadLocalRandom.current().nextInt(ids.size())))
+                    .cookie("SESSION", session);
+        };
+        return request.exchangeToMono(response -> response.releaseBody().thenReturn(isExpected(operation, response)));
+    }
+
+    private static boolean isExpected(Operation operation, ClientResponse response) {
+        if (operation != Operation.ADD) {
+            return response.statusCode().is2xxSuccessful();
+        }
+        String location = response.headers().asHttpHeaders().getFirst(HttpHeaders.LOCATION);
+        return response.statusCode().is3xxRedirection() && location != null && location.contains("success=");
+    }
+
+    private static String selectDeathNote(WebClient client, String deathNoteId) {
+        return client.post().uri("/processDeathNoteSelection")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("selectedDeathNoteId", deathNoteId))
+                .exchangeToMono(response -> response.releaseBody()
+                        .then(Mono.justOrEmpty(response.cookies().getFirst("SESSION")))
+                        .map(HttpCookie::getValue))
+                .blockOptional(Duration.ofSeconds(10))
+                .orElseThrow(() -> new IllegalStateException("La selección de Death Note no devolvió cookie de sesión"));
+    }
+
+    private void report(Map<Operation, Histogram> latencies, Map<Operation, AtomicLong> errors, long measuredNanos) throws IOException {
+        Path directory = Files.createDirectories(Path.of("target", "load"));
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("LOAD: objetivo %d req/s durante %s (calentamiento %s), mezcla add=%d list=%d view=%d",
+                rate, duration, warmup, addWeight, listWeight, viewWeight));
+        for (Map.Entry<Operation, Histogram> entry : latencies.entrySet()) {
+            Histogram histogram = entry.getValue();
+            lines.add(String.format("LOAD: %-4s %7d peticiones %5d errores %8.1f req/s  p50 %6.1f ms  p90 %6.1f ms  p99 %6.1f ms  p99.9 %6.1f ms  máx %6.1f ms",
+                    entry.getKey(), histogram.getTotalCount(), errors.get(entry.getKey()).get(),
+                    histogram.getTotalCount() * 1e9 / measuredNanos,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+
+            String name = entry.getKey().name().toLowerCase();
+            try (PrintStream out = new PrintStream(directory.resolve(name + ".hgrm").toFile())) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+            try (PrintStream out = new PrintStream(directory.resolve(name + ".hlog").toFile())) {
+                new HistogramLogWriter(out).outputIntervalHistogram(histogram);
+            }
+        }
+        lines.forEach(System.out::println);
+        Files.write(directory.resolve("summary.txt"), lines);
+    }
+}
@@ -0,0 +1,114 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * El endpoint de fotos debe servir los ficheros subidos con caché inmutable, 304, Range y miniaturas.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PhotoControllerTests {
+
+    private static final String PHOTO = "0f8c2b1e-test-photo.png";
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes();
+    private static final String FACE = "3a9d7c44-test-face.png";
+
+    private static final Path uploadDir = TestSupport.tempDirectory("deathnote-uploads");
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_photos");
+        registry.add("deathnote.upload.path", () -> uploadDir.toString());
+    }
+
+    @BeforeAll
+    static void writePhoto() throws IOException {
+        Files.write(uploadDir.resolve(PHOTO), CONTENT);
+        Files.write(uploadDir.resolve(FACE), TestSupport.png(600, 400));
+    }
+
+    @Test
+    void servePhoto_shouldReturnBodyWithImmutableCacheHeaders() {
+        webClient.get().uri("/uploads/" + PHOTO)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.IMAGE_PNG)
+                .expectHeader().valueMatches(HttpHeaders.CACHE_CONTROL, ".*max-age=31536000.*immutable.*")
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectHeader().exists(HttpHeaders.LAST_MODIFIED)
+                .expectBody(byte[].class).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void servePhoto_withMatchingETag_shouldReturnNotModified() {
+        String etag = webClient.get().uri("/uploads/" + PHOTO)
+                .exchange()
+                .returnResult(byte[].class)
+                .getResponseHeaders().getETag();
+        Assertions.assertThat(etag).isNotNull();
+
+        webClient.get().uri("/uploads/" + PHOTO)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void servePhoto_withRange_shouldReturnPartialContent() {
+        webClient.get().uri("/uploads/" + PHOTO)
+                .header(HttpHeaders.RANGE, "bytes=2-5")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 2-5/" + CONTENT.length)
+                .expectBody(String.class).isEqualTo("2345");
+    }
+
+    @Test
+    void servePhoto_withSize_shouldGenerateThumbnailLazily() throws IOException {
+        byte[] thumbnail = webClient.get().uri("/uploads/" + FACE + "?size=64")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.IMAGE_JPEG)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        Assertions.assertThat(image.getWidth()).isEqualTo(64);
+        Assertions.assertThat(image.getHeight()).isEqualTo(43);
+        Assertions.assertThat(uploadDir.resolve("thumbs/64/" + FACE + ".jpg")).exists();
+
+        webClient.get().uri("/uploads/" + FACE + "?size=100")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void servePhoto_shouldNotLeaveUploadDirectory() {
+        webClient.get().uri("/uploads/..%2F..%2Fetc%2Fpasswd")
+                .exchange()
+                .expectStatus().isNotFound();
+        webClient.get().uri("/uploads/missing.png")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,58 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * El endpoint Prometheus debe publicar las métricas del scheduler y las latencias de Mongo por consulta.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability(tracing = false)
+class PrometheusEndpointTests {
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_metrics");
+    }
+
+    @Test
+    void prometheus_shouldExposeSchedulerAndQueryMetrics() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", null)).block(Duration.ofSeconds(5));
+        webClient.post().uri("/api/persons")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "Naomi Misora", "deathNoteId", deathNote.getId()))
+                .exchange()
+                .expectStatus().isCreated();
+
+        String scrape = webClient.get().uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        Assertions.assertThat(scrape)
+                .contains("deathnote_scheduler_pending")
+                .contains("deathnote_scheduler_backlog")
+                .contains("deathnote_scheduler_lag_seconds_bucket")
+                .containsPattern("mongodb_driver_commands_seconds_count\\{[^}]*command=\"findAndModify\"[^}]*query=\"\\{_id,ownerId}\"");
+    }
+}
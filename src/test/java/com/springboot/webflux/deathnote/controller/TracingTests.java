@@ -0,0 +1,127 @@
+package com.springboot.webflux.deathnote.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Un alta por el formulario debe dejar una traza completa: la petición HTTP, la observación total
+ * del alta con sus etapas, la transferencia de la foto y los comandos de Mongo como hijos.
+ */
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class TracingTests {
+
+    private static final Path traceFile = TestSupport.tempDirectory("deathnote-tracing").resolve("traces.jsonl");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_tracing");
+        registry.add("deathnote.upload.path", () -> TestSupport.tempDirectory("deathnote-tracing").toString());
+        registry.add("deathnote.tracing.file", traceFile::toString);
+        registry.add("management.tracing.sampling.probability", () -> "1.0");
+    }
+
+    @Test
+    void personWrite_shouldExportOneTraceAcrossStagesPhotoAndMongo() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", null)).block(Duration.ofSeconds(5));
+        ResponseCookie session = webClient.post().uri("/processDeathNoteSelection")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("selectedDeathNoteId", deathNote.getId()))
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .returnResult(Void.class).getResponseCookies().getFirst("SESSION");
+
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("name", "Kyosuke Higuchi");
+        body.part("file", new ByteArrayResource(TestSupport.png(32, 32)) {
+            @Override
+            public String getFilename() {
+                return "higuchi.png";
+            }
+        }).contentType(MediaType.IMAGE_PNG);
+        webClient.post().uri("/persons/add")
+                .cookie("SESSION", session.getValue())
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .expectHeader().valueMatches("Location", "/listNames\\?success=.*");
+
+        // El BatchSpanProcessor exporta cada pocos segundos
+        Awaitility.await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            List<JsonNode> spans = readSpans();
+            JsonNode total = find(spans, "person-write total");
+            String traceId = total.get("traceId").asText();
+            List<JsonNode> trace = spans.stream().filter(span -> span.get("traceId").asText().equals(traceId)).toList();
+
+            JsonNode server = trace.stream().filter(span -> span.get("kind").asText().equals("SERVER")).findFirst()
+                    .orElseThrow(() -> new AssertionError("falta el span de la petición HTTP"));
+            Assertions.assertThat(total.get("parentSpanId").asText()).isEqualTo(server.get("spanId").asText());
+            Assertions.assertThat(total.get("attributes").get("outcome").asText()).isEqualTo("redirect");
+
+            JsonNode upload = find(trace, "person-write upload");
+            Assertions.assertThat(upload.get("parentSpanId").asText()).isEqualTo(total.get("spanId").asText());
+            JsonNode transfer = find(trace, "deathnote.photo.transfer");
+            Assertions.assertThat(transfer.get("parentSpanId").asText()).isEqualTo(upload.get("spanId").asText());
+
+            JsonNode saveInitialEntry = find(trace, "person-write save_initial_entry");
+            JsonNode insert = find(trace, "people.insert");
+            Assertions.assertThat(insert.get("kind").asText()).isEqualTo("CLIENT");
+            Assertions.assertThat(insert.get("parentSpanId").asText()).isEqualTo(saveInitialEntry.get("spanId").asText());
+        });
+    }
+
+    private List<JsonNode> readSpans() throws IOException {
+        if (!Files.exists(traceFile)) {
+            return List.of();
+        }
+        // La última línea puede estar a medio escribir si el exportador está volcando un lote
+        return Files.readAllLines(traceFile).stream()
+                .<JsonNode>mapMulti((line, spans) -> {
+                    try {
+                        spans.accept(objectMapper.readTree(line));
+                    } catch (IOException e) {
+                        // se vuelve a leer en la siguiente pasada
+                    }
+                })
+                .toList();
+    }
+
+    // AssertionError y no NoSuchElementException para que Awaitility siga esperando a la exportación
+    private static JsonNode find(List<JsonNode> spans, String name) {
+        return spans.stream()
+                .filter(span -> span.get("name").asText().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("falta el span " + name));
+    }
+}
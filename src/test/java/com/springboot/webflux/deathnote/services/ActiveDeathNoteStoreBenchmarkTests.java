@@ -0,0 +1,110 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.repository.ActiveDeathNoteSessionRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import org.springframework.web.server.session.WebSessionManager;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara el coste por petición de leer la Death Note activa con cada {@link ActiveDeathNoteStore}
+ * y el heap retenido por visitante. El heap incluye la cookie que guarda el propio test y, en el modo
+ * mongo, los documentos del servidor Mongo en memoria. Se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class ActiveDeathNoteStoreBenchmarkTests {
+
+    private static final int VISITORS = 5_000;
+    private static final int REQUESTS = 50_000;
+    private static final String DEATH_NOTE_ID = "6650f0c2a1b2c3d4e5f60718";
+
+    @Autowired
+    private ActiveDeathNoteSessionRepository sessionRepository;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_session_bench");
+    }
+
+    @Test
+    void compareStores() {
+        run("memory", new WebSessionActiveDeathNoteStore());
+        run("cookie", new SignedCookieActiveDeathNoteStore("secreto-de-benchmark-de-32-bytes-o-mas", Duration.ofHours(1), false));
+        run("mongo", new MongoActiveDeathNoteStore(sessionRepository, Duration.ofHours(1), false));
+    }
+
+    private void run(String name, ActiveDeathNoteStore store) {
+        WebSessionManager sessionManager = sessionManager();
+        long heapBefore = usedHeap();
+        List<HttpCookie> cookies = new ArrayList<>(VISITORS);
+        for (int i = 0; i < VISITORS; i++) {
+            cookies.add(select(store, sessionManager));
+        }
+        long heapPerVisitor = Math.max(0, usedHeap() - heapBefore) / VISITORS;
+
+        // Calentamiento y medida sobre los mismos visitantes
+        for (int i = 0; i < VISITORS; i++) {
+            Assertions.assertThat(read(store, sessionManager, cookies.get(i))).isEqualTo(DEATH_NOTE_ID);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            read(store, sessionManager, cookies.get(i % VISITORS));
+        }
+        long nanosPerRequest = (System.nanoTime() - start) / REQUESTS;
+
+        System.out.printf("BENCHMARK: store=%s %d ns/petición, ~%d bytes de heap por visitante%n",
+                name, nanosPerRequest, heapPerVisitor);
+    }
+
+    private static WebSessionManager sessionManager() {
+        InMemoryWebSessionStore sessionStore = new InMemoryWebSessionStore();
+        sessionStore.setMaxSessions(VISITORS * 2);
+        DefaultWebSessionManager sessionManager = new DefaultWebSessionManager();
+        sessionManager.setSessionStore(sessionStore);
+        return sessionManager;
+    }
+
+    private static HttpCookie select(ActiveDeathNoteStore store, WebSessionManager sessionManager) {
+        MockServerWebExchange exchange = MockServerWebExchange.builder(MockServerHttpRequest.post("/processDeathNoteSelection"))
+                .sessionManager(sessionManager)
+                .build();
+        store.set(exchange, DEATH_NOTE_ID).block();
+        exchange.getResponse().setComplete().block();
+        ResponseCookie cookie = exchange.getResponse().getCookies().values().stream()
+                .flatMap(List::stream)
+                .findFirst()
+                .orElseThrow();
+        return new HttpCookie(cookie.getName(), cookie.getValue());
+    }
+
+    private static String read(ActiveDeathNoteStore store, WebSessionManager sessionManager, HttpCookie cookie) {
+        MockServerWebExchange exchange = MockServerWebExchange.builder(MockServerHttpRequest.get("/rules").cookie(cookie))
+                .sessionManager(sessionManager)
+                .build();
+        String deathNoteId = store.get(exchange).block();
+        exchange.getResponse().setComplete().block();
+        return deathNoteId;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,140 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.CacheInvalidation;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Las invalidaciones de otro nodo llegan por la colección capped y, al reabrir el cursor, se
+ * continúa tras el último seq leído sin volver a aplicar las anteriores, pero sin perder las que se
+ * insertaron tarde con un seq menor. Si falta alguno se vacían las cachés.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class CacheInvalidationBusTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private CacheInvalidationBus invalidationBus;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        String uri = TestSupport.mongoUri("death_note_cache_bus");
+        // El servidor en memoria no crea colecciones capped: se crea una normal antes de arrancar
+        try (MongoClient client = MongoClients.create(uri)) {
+            Mono.from(client.getDatabase("death_note_cache_bus").createCollection("cache_invalidations")).block(TIMEOUT);
+        }
+        registry.add("spring.data.mongodb.uri", () -> uri);
+        registry.add("deathnote.cache.bus.enabled", () -> "true");
+    }
+
+    @Test
+    void eventsFromAnotherNode_shouldBeAppliedOnce() throws InterruptedException {
+        Person person = personRepository.save(new Person("Soichiro", null, null, null, null)).block(TIMEOUT);
+        personService.findById(person.getId()).block(TIMEOUT);
+        rename(person, "Soichiro Yagami");
+
+        // Publicada por otro nodo, con un reloj muy atrasado: no debe importar
+        publishFromAnotherNode("people", List.of(person.getId()), new Date(0));
+
+        Awaitility.await().atMost(Duration.ofSeconds(10))
+                .until(() -> personService.findById(person.getId()).block(TIMEOUT).getName().equals("Soichiro Yagami"));
+
+        // Ya aplicada: aunque el cursor se reabra, la nueva entrada de la caché no se vuelve a invalidar
+        rename(person, "Fuera de banda");
+        Thread.sleep(2500);
+        Assertions.assertThat(personService.findById(person.getId()).block(TIMEOUT).getName()).isEqualTo("Soichiro Yagami");
+    }
+
+    @Test
+    @DirtiesContext
+    void aMissingSeq_shouldFlushTheCaches() {
+        // Se para el cursor del bus para abrir uno a mano con un seq conocido
+        invalidationBus.shutdown();
+        Person person = personRepository.save(new Person("Touta", null, null, null, null)).block(TIMEOUT);
+        personService.findById(person.getId()).block(TIMEOUT);
+        rename(person, "Touta Matsuda");
+
+        mongoTemplate.remove(new Query(), CacheInvalidation.class).block(TIMEOUT);
+        long lastRead = invalidationBus.nextSeq().block(TIMEOUT);
+        // Este seq nunca llega a leerse: como si la colección capped lo hubiera sobrescrito
+        invalidationBus.nextSeq().block(TIMEOUT);
+        ((AtomicLong) ReflectionTestUtils.getField(invalidationBus, "lastSeq")).set(lastRead);
+        publishFromAnotherNode("otra-cache", List.of(), new Date());
+
+        invalidationBus.tail().take(1).blockLast(TIMEOUT);
+
+        Assertions.assertThat(personService.findById(person.getId()).block(TIMEOUT).getName()).isEqualTo("Touta Matsuda");
+    }
+
+    @Test
+    @DirtiesContext
+    void aLowerSeqInsertedLate_shouldStillBeAppliedAfterReopening() {
+        invalidationBus.shutdown();
+        Person late = personRepository.save(new Person("Hitoshi", null, null, null, null)).block(TIMEOUT);
+        Person early = personRepository.save(new Person("Kiyomi", null, null, null, null)).block(TIMEOUT);
+        mongoTemplate.remove(new Query(), CacheInvalidation.class).block(TIMEOUT);
+
+        // Otro nodo reserva su seq, y este nodo reserva el siguiente e inserta antes
+        long lowerSeq = invalidationBus.nextSeq().block(TIMEOUT);
+        CacheInvalidation first = publishFromAnotherNode("people", List.of(early.getId()), new Date());
+        // Aplicada por el cursor antes de que se reabra
+        invalidationBus.apply(first);
+        personService.findById(early.getId()).block(TIMEOUT);
+        rename(early, "Kiyomi Takada");
+        personService.findById(late.getId()).block(TIMEOUT);
+        rename(late, "Hitoshi Demegawa");
+        publish(new CacheInvalidation("otro-nodo", "people", List.of(late.getId()), new Date()), lowerSeq);
+
+        invalidationBus.tail().take(2).doOnNext(invalidationBus::apply).blockLast(TIMEOUT);
+
+        Assertions.assertThat(personService.findById(late.getId()).block(TIMEOUT).getName()).isEqualTo("Hitoshi Demegawa");
+        // La ya aplicada no se repite
+        Assertions.assertThat(personService.findById(early.getId()).block(TIMEOUT).getName()).isEqualTo("Kiyomi");
+    }
+
+    private CacheInvalidation publishFromAnotherNode(String cache, List<String> keys, Date createdAt) {
+        return publish(new CacheInvalidation("otro-nodo", cache, keys, createdAt), invalidationBus.nextSeq().block(TIMEOUT));
+    }
+
+    private CacheInvalidation publish(CacheInvalidation event, long seq) {
+        event.setSeq(seq);
+        return mongoTemplate.insert(event).block(TIMEOUT);
+    }
+
+    private void rename(Person person, String name) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(person.getId())),
+                Update.update("name", name), Person.class).block(TIMEOUT);
+    }
+}
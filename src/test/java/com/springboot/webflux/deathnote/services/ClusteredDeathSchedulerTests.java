@@ -0,0 +1,90 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.DeathNoteApplication;
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Varias instancias de la app contra un mismo Mongo (en memoria): cada muerte vencida debe
+ * aplicarse una sola vez y el trabajo debe repartirse entre los nodos vivos.
+ */
+class ClusteredDeathSchedulerTests {
+
+    private static final int PEOPLE = 300;
+
+    private final String mongoUri = TestSupport.mongoUri("death_note_cluster");
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void dueDeaths_shouldBeAppliedExactlyOnce_acrossAllLiveNodes() {
+        ConfigurableApplicationContext nodeA = startNode("node-a");
+        ConfigurableApplicationContext nodeB = startNode("node-b");
+        awaitLiveNodes(2);
+
+        PersonRepository personRepository = nodeA.getBean(PersonRepository.class);
+        LocalDateTime due = LocalDateTime.now().plusSeconds(2);
+        List<Person> people = IntStream.range(0, PEOPLE)
+                .mapToObj(i -> {
+                    Person person = new Person("Cluster " + i, null, null, null, "cluster-note");
+                    person.setStatus("PENDING_HEART_ATTACK");
+                    person.setScheduledDeathTime(due);
+                    return person;
+                })
+                .toList();
+        personRepository.insert(people).then().block(Duration.ofSeconds(30));
+
+        // La llegada de un tercer nodo obliga a todos a reconstruir su partición
+        startNode("node-c");
+        awaitLiveNodes(3);
+
+        Awaitility.await().atMost(Duration.ofSeconds(30)).untilAsserted(() ->
+                Assertions.assertThat(personRepository.findAll().filter(Person::isAlive).count().block()).isZero());
+
+        List<Long> appliedPerNode = nodes.stream()
+                .map(node -> node.getBean(DeathSchedulerService.class).getAppliedTransitions())
+                .toList();
+        Assertions.assertThat(appliedPerNode.stream().mapToLong(Long::longValue).sum())
+                .as("transiciones aplicadas por nodo: %s", appliedPerNode)
+                .isEqualTo(PEOPLE);
+        Assertions.assertThat(appliedPerNode).allMatch(applied -> applied > 0);
+        Assertions.assertThat(personRepository.findAll().map(Person::getStatus).distinct().collectList().block())
+                .containsExactly("DEAD_BY_SCHEDULER");
+    }
+
+    private ConfigurableApplicationContext startNode(String nodeId) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DeathNoteApplication.class)
+                .run(
+                        "--spring.data.mongodb.uri=" + mongoUri,
+                        "--server.port=0",
+                        "--spring.devtools.restart.enabled=false",
+                        "--deathnote.scheduler.cluster.enabled=true",
+                        "--deathnote.scheduler.cluster.node-id=" + nodeId,
+                        "--deathnote.scheduler.cluster.heartbeat-interval=PT0.2S",
+                        "--deathnote.scheduler.cluster.lease-ttl=PT2S");
+        nodes.add(context);
+        return context;
+    }
+
+    private void awaitLiveNodes(int expected) {
+        Awaitility.await().atMost(Duration.ofSeconds(20)).until(() -> nodes.stream()
+                .allMatch(node -> node.getBean(SchedulerMembershipService.class).getLiveNodes().size() == expected));
+    }
+}
@@ -0,0 +1,176 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Owner;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.repository.OwnerRepository;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Muchas escrituras simultáneas en la misma Death Note no deben perder ninguna, repetir la escritura
+ * de una misma persona no debe contarla dos veces y borrarla solo descuenta si estaba contada.
+ * Rechazar la propiedad no pisa el contador.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class DeathNoteServiceConcurrencyTests {
+
+    private static final int WRITERS = 500;
+
+    @Autowired
+    private DeathNoteService deathNoteService;
+
+    @MockitoSpyBean
+    private DeathNoteRepository deathNoteRepository;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private PersonService personService;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_concurrency");
+    }
+
+    @Test
+    void concurrentWrites_shouldNotLoseAnyCount() {
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+
+        List<Person> people = personRepository.insert(IntStream.range(0, WRITERS)
+                        .mapToObj(i -> new Person("person-" + i, null, null, null, note.getId()))
+                        .toList())
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        Flux.fromIterable(people)
+                .parallel(16)
+                .runOn(Schedulers.parallel())
+                .flatMap(person -> deathNoteService.writePersonInDeathNote(note.getId(), person.getId(), null, null, null))
+                .sequential()
+                .blockLast(Duration.ofSeconds(60));
+
+        DeathNote updated = deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10));
+        Assertions.assertThat(updated.getPersonCount()).isEqualTo(WRITERS);
+    }
+
+    @Test
+    void repeatedWritesOfTheSamePerson_shouldCountOnce() {
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+        Person person = personRepository.save(new Person("Touta Matsuda", null, null, null, note.getId())).block(Duration.ofSeconds(10));
+
+        // Un doble envío y varios reintentos simultáneos de la misma escritura
+        Flux.range(0, 20)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> deathNoteService.writePersonInDeathNote(note.getId(), person.getId(), null, null, null))
+                .sequential()
+                .blockLast(Duration.ofSeconds(30));
+
+        Assertions.assertThat(deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isEqualTo(1);
+        Assertions.assertThat(personRepository.findById(person.getId()).block(Duration.ofSeconds(10)).getCountedDeathNoteId())
+                .isEqualTo(note.getId());
+    }
+
+    @Test
+    void movingAPerson_shouldCountItInTheNewNoteAndLeaveTheOldOne() {
+        DeathNote first = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+        DeathNote second = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+        Person person = personRepository.save(new Person("Shuichi Aizawa", null, null, null, first.getId())).block(Duration.ofSeconds(10));
+        deathNoteService.writePersonInDeathNote(first.getId(), person.getId(), null, null, null).block(Duration.ofSeconds(10));
+
+        deathNoteService.writePersonInDeathNote(second.getId(), person.getId(), null, null, null).block(Duration.ofSeconds(10));
+        deathNoteService.writePersonInDeathNote(second.getId(), person.getId(), null, null, null).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(deathNoteRepository.findById(first.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isZero();
+        Assertions.assertThat(deathNoteRepository.findById(second.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isEqualTo(1);
+    }
+
+    @Test
+    void writingTheOwner_shouldFailWithoutModifyingTheNote() {
+        Person owner = personRepository.save(new Person("Light Yagami", null, null, null, null)).block(Duration.ofSeconds(10));
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", owner.getId())).block(Duration.ofSeconds(10));
+
+        Assertions.assertThatThrownBy(() -> deathNoteService.writePersonInDeathNote(note.getId(), owner.getId(), null, null, null)
+                        .block(Duration.ofSeconds(10)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("propietario");
+        Assertions.assertThat(deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isZero();
+        // La marca de contada se deshace
+        Assertions.assertThat(personRepository.findById(owner.getId()).block(Duration.ofSeconds(10)).getCountedDeathNoteId()).isNull();
+    }
+
+    @Test
+    void writingAMissingPerson_shouldFail() {
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+
+        Assertions.assertThatThrownBy(() -> deathNoteService.writePersonInDeathNote(note.getId(), new ObjectId().toHexString(), null, null, null)
+                        .block(Duration.ofSeconds(10)))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessageContaining("No se encontró");
+        Assertions.assertThat(deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isZero();
+    }
+
+    @Test
+    void deletingAPerson_shouldOnlyDecrementTheNoteItWasCountedIn() {
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", null)).block(Duration.ofSeconds(10));
+        Person counted = personRepository.save(new Person("Kanzo Mogi", null, null, null, note.getId())).block(Duration.ofSeconds(10));
+        deathNoteService.writePersonInDeathNote(note.getId(), counted.getId(), null, null, null).block(Duration.ofSeconds(10));
+        // Guardada con su deathNoteId pero nunca contada, como tras una escritura rechazada o fallida
+        Person uncounted = personRepository.save(new Person("Hideki Ide", null, null, null, note.getId())).block(Duration.ofSeconds(10));
+
+        personService.delete(uncounted).block(Duration.ofSeconds(10));
+        Assertions.assertThat(deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isEqualTo(1);
+
+        personService.delete(counted).block(Duration.ofSeconds(10));
+        // Un segundo borrado (un doble envío) no vuelve a restar
+        personService.delete(counted).block(Duration.ofSeconds(10));
+        Assertions.assertThat(deathNoteRepository.findById(note.getId()).block(Duration.ofSeconds(10)).getPersonCount()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rejectingOwnership_shouldKeepCountsWrittenMeanwhile() {
+        ownerRepository.deleteAll().block(Duration.ofSeconds(10));
+        Owner owner = ownerRepository.save(new Owner("Light Yagami", false, null, null)).block(Duration.ofSeconds(10));
+        DeathNote note = deathNoteRepository.save(new DeathNote("stress-shinigami", owner.getId())).block(Duration.ofSeconds(10));
+        owner.setDeathNoteId(note.getId());
+        ownerRepository.save(owner).block(Duration.ofSeconds(10));
+
+        // Otra escritura cuenta a alguien justo después de que rejectOwnership lea la Death Note
+        AtomicBoolean raced = new AtomicBoolean();
+        Mockito.doAnswer(invocation -> ((Mono<DeathNote>) invocation.callRealMethod())
+                        .flatMap(read -> raced.getAndSet(true)
+                                ? Mono.just(read)
+                                : deathNoteRepository.incrementPersonCount(note.getId(), 1).thenReturn(read)))
+                .when(deathNoteRepository).findById(note.getId());
+
+        DeathNote rejected = deathNoteService.rejectOwnership(note.getId()).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(rejected.getOwnerId()).isNull();
+        Assertions.assertThat(rejected.getPersonCount()).isEqualTo(1);
+        Assertions.assertThat(ownerRepository.findById(owner.getId()).block(Duration.ofSeconds(10)).getDeathNoteId()).isNull();
+    }
+}
@@ -0,0 +1,202 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.DeathNoteApplication;
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ciclo de vida de los temporizadores del scheduler: se arman al anotar, se rearman al especificar
+ * la muerte, se cancelan al borrar o morir, disparan en scheduledDeathTime y se reconstruyen al arrancar.
+ * Un lote que no se puede escribir se reintenta y, si sigue fallando, se rearma.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class DeathSchedulerServiceTests {
+
+    private static String mongoUri;
+
+    @Autowired
+    private DeathSchedulerService deathSchedulerService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        mongoUri = TestSupport.registerMongo(registry, "death_note_scheduler");
+        registry.add("deathnote.scheduler.write-retry-backoff", () -> "PT0.05S");
+        registry.add("deathnote.scheduler.rearm-delay", () -> "PT0.5S");
+    }
+
+    @Test
+    void schedule_shouldFireAtScheduledDeathTime() {
+        LocalDateTime due = LocalDateTime.now().plusSeconds(2).truncatedTo(ChronoUnit.MILLIS);
+        Person person = insertPending("Naomi Misora", DeathSchedulerService.PENDING_HEART_ATTACK, due);
+
+        deathSchedulerService.schedule(person);
+
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isTrue();
+        Assertions.assertThat(reload(person).isAlive()).as("no debe morir antes de tiempo").isTrue();
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !reload(person).isAlive());
+
+        Person dead = reload(person);
+        Assertions.assertThat(LocalDateTime.now()).isAfterOrEqualTo(due);
+        Assertions.assertThat(dead.getStatus()).isEqualTo(DeathSchedulerService.DEAD_BY_SCHEDULER);
+        Assertions.assertThat(dead.getDeathDate()).isEqualTo(due);
+        Assertions.assertThat(dead.getScheduledDeathTime()).isNull();
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isFalse();
+    }
+
+    @Test
+    void specifyDeath_inTheFuture_shouldRearmWithTheNewTime() {
+        Person person = personService.saveInitialEntry(new Person("Raye Penber", null, null, null, null)).block(Duration.ofSeconds(5));
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isTrue();
+
+        LocalDateTime explicit = LocalDateTime.now().plusSeconds(2).truncatedTo(ChronoUnit.MILLIS);
+        personService.specifyDeath(person.getId(), explicit, "Paro cardíaco en el metro", null).block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isTrue();
+        // Mucho antes de los 40 s de la regla temporal
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !reload(person).isAlive());
+        Person dead = reload(person);
+        Assertions.assertThat(dead.getStatus()).isEqualTo(DeathSchedulerService.DEAD_DETAILS_SPECIFIED);
+        Assertions.assertThat(dead.getDeathDate()).isEqualTo(explicit);
+        Assertions.assertThat(dead.getCauseOfDeath()).isNull();
+    }
+
+    @Test
+    void specifyDeath_inThePast_shouldCancelTheTimer() {
+        Person person = personService.saveInitialEntry(new Person("Lind L. Tailor", null, null, null, null)).block(Duration.ofSeconds(5));
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isTrue();
+
+        personService.specifyDeath(person.getId(), LocalDateTime.now().minusMinutes(1), "Emisión en directo", null).block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isFalse();
+        Assertions.assertThat(reload(person).getStatus()).isEqualTo(DeathSchedulerService.DEAD_DETAILS_SPECIFIED);
+    }
+
+    @Test
+    void delete_shouldCancelTheTimer() {
+        Person person = personService.saveInitialEntry(new Person("Kiyomi Takada", null, null, null, null)).block(Duration.ofSeconds(5));
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isTrue();
+
+        personService.delete(person).block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isFalse();
+    }
+
+    @Test
+    void cancel_shouldPreventTheTransition() throws InterruptedException {
+        Person person = insertPending("Hitoshi Demegawa", DeathSchedulerService.PENDING_HEART_ATTACK, LocalDateTime.now().plus(Duration.ofMillis(500)));
+        deathSchedulerService.schedule(person);
+
+        deathSchedulerService.cancel(person.getId());
+        Thread.sleep(1500);
+
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isFalse();
+        Assertions.assertThat(reload(person).isAlive()).isTrue();
+    }
+
+    @Test
+    void markDeadFailingOnce_shouldRetryAndStillApplyTheDeath() {
+        Person person = insertPending("Hirokazu Ukita", DeathSchedulerService.PENDING_HEART_ATTACK, LocalDateTime.now().plus(Duration.ofMillis(300)));
+        AtomicInteger calls = new AtomicInteger();
+
+        withMarkDeadFailing(1, calls, () -> {
+            deathSchedulerService.schedule(person);
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !reload(person).isAlive());
+        });
+
+        Assertions.assertThat(reload(person).getStatus()).isEqualTo(DeathSchedulerService.DEAD_BY_SCHEDULER);
+        Assertions.assertThat(calls.get()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void markDeadFailingBeyondTheRetries_shouldRearmTheBatch() {
+        Person person = insertPending("Shuichi Aizawa", DeathSchedulerService.PENDING_HEART_ATTACK, LocalDateTime.now().plus(Duration.ofMillis(300)));
+        AtomicInteger calls = new AtomicInteger();
+
+        // El primer intento y sus tres reintentos fallan; el lote rearmado se escribe después
+        withMarkDeadFailing(4, calls, () -> {
+            deathSchedulerService.schedule(person);
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !reload(person).isAlive());
+        });
+
+        Assertions.assertThat(reload(person).getStatus()).isEqualTo(DeathSchedulerService.DEAD_BY_SCHEDULER);
+        Assertions.assertThat(calls.get()).isGreaterThanOrEqualTo(5);
+        Assertions.assertThat(deathSchedulerService.isArmed(person.getId())).isFalse();
+    }
+
+    @Test
+    void startup_shouldRebuildPendingDeathsFromTheDatabase() {
+        // Escritas directamente en la BD, sin pasar por ningún temporizador: como tras un reinicio
+        Person overdue = insertPending("Kyosuke Higuchi", DeathSchedulerService.PENDING_HEART_ATTACK, LocalDateTime.now().minusMinutes(5));
+        Person upcoming = insertPending("Teru Mikami", DeathSchedulerService.DEATH_SCHEDULED_EXPLICITLY, LocalDateTime.now().plusMinutes(10));
+
+        try (ConfigurableApplicationContext restarted = new SpringApplicationBuilder(DeathNoteApplication.class)
+                .run("--spring.data.mongodb.uri=" + mongoUri,
+                        "--spring.main.web-application-type=none",
+                        "--spring.devtools.restart.enabled=false")) {
+            DeathSchedulerService restartedScheduler = restarted.getBean(DeathSchedulerService.class);
+
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !reload(overdue).isAlive());
+            Assertions.assertThat(reload(overdue).getStatus()).isEqualTo(DeathSchedulerService.DEAD_BY_SCHEDULER);
+            Assertions.assertThat(restartedScheduler.isArmed(upcoming.getId())).isTrue();
+            Assertions.assertThat(restartedScheduler.isArmed(overdue.getId())).isFalse();
+        }
+    }
+
+    /**
+     * Sustituye el repositorio del scheduler por uno cuyas primeras {@code failures} llamadas a
+     * markDead fallan; el resto delega en el real.
+     */
+    private void withMarkDeadFailing(int failures, AtomicInteger calls, Runnable test) {
+        DeathSchedulerService target = AopTestUtils.getTargetObject(deathSchedulerService);
+        PersonRepository failing = Mockito.mock(PersonRepository.class, AdditionalAnswers.delegatesTo(personRepository));
+        Mockito.doAnswer(invocation -> calls.incrementAndGet() <= failures
+                        ? Mono.error(new IllegalStateException("primario no disponible"))
+                        : personRepository.markDead(invocation.getArgument(0)))
+                .when(failing).markDead(ArgumentMatchers.anyList());
+        ReflectionTestUtils.setField(target, "personRepository", failing);
+        try {
+            test.run();
+        } finally {
+            ReflectionTestUtils.setField(target, "personRepository", personRepository);
+        }
+    }
+
+    private Person insertPending(String name, String status, LocalDateTime scheduledDeathTime) {
+        Person person = new Person(name, null, null, null, null);
+        person.setStatus(status);
+        person.setScheduledDeathTime(scheduledDeathTime.truncatedTo(ChronoUnit.MILLIS));
+        return personRepository.insert(List.of(person)).blockFirst(Duration.ofSeconds(5));
+    }
+
+    private Person reload(Person person) {
+        return personRepository.findById(person.getId()).block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,109 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Compara el rendimiento de la transición por documento (findAll + save uno a uno) con la escritura
+ * en lotes de {@link PersonRepository#markDead}. Se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class DeathTransitionBenchmarkTests {
+
+    private static final int PEOPLE = 5_000;
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        personRepository.deleteAll().block(Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        personRepository.deleteAll().block(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void compareBulkTransitionsWithPerDocumentSaves() {
+        insertDuePeople();
+        // El antiguo sondeo: documentos completos y un save por persona
+        Query due = Query.query(Criteria.where("status").is(DeathSchedulerService.PENDING_HEART_ATTACK)
+                .and("scheduledDeathTime").lt(LocalDateTime.now())
+                .and("alive").is(true));
+        long perDocumentNanos = timed(() -> mongoTemplate.find(due, Person.class)
+                .flatMap(person -> {
+                    person.setAlive(false);
+                    person.setCauseOfDeath("Ataque al Corazón (Automático por Scheduler)");
+                    person.setDeathDate(person.getScheduledDeathTime());
+                    person.setStatus("DEAD_BY_SCHEDULER");
+                    person.setScheduledDeathTime(null);
+                    return personRepository.save(person);
+                })
+                .count()
+                .block(Duration.ofMinutes(5)));
+        assertAllDead();
+
+        personRepository.deleteAll().block(Duration.ofSeconds(30));
+        insertDuePeople();
+        long bulkNanos = timed(() -> personRepository
+                .findPendingDeaths()
+                .buffer(BATCH_SIZE)
+                .concatMap(personRepository::markDead)
+                .reduce(0, Integer::sum)
+                .block(Duration.ofMinutes(5)));
+        assertAllDead();
+
+        System.out.printf("BENCHMARK: por documento %.0f transiciones/s, en lotes de %d %.0f transiciones/s%n",
+                opsPerSecond(perDocumentNanos), BATCH_SIZE, opsPerSecond(bulkNanos));
+    }
+
+    private void insertDuePeople() {
+        LocalDateTime due = LocalDateTime.now().minusSeconds(1);
+        List<Person> people = IntStream.range(0, PEOPLE)
+                .mapToObj(i -> {
+                    Person person = new Person("Bench " + i, null, null, null, "bench-note");
+                    person.setStatus("PENDING_HEART_ATTACK");
+                    person.setScheduledDeathTime(due);
+                    return person;
+                })
+                .toList();
+        personRepository.insert(people).then().block(Duration.ofMinutes(1));
+    }
+
+    private void assertAllDead() {
+        Long alive = personRepository.findAll().filter(Person::isAlive).count().block(Duration.ofSeconds(30));
+        Assertions.assertThat(alive).isZero();
+    }
+
+    private static long timed(Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        return System.nanoTime() - start;
+    }
+
+    private static double opsPerSecond(long nanos) {
+        return PEOPLE / (nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,97 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.springboot.webflux.deathnote.DeathNoteApplication;
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.SchedulerResumeToken;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un nodo que se reinicia con el mismo node-id continúa el change stream desde su resume token:
+ * lo escrito mientras estaba parado llega como evento. Sin node-id fijo no arranca.
+ */
+class PersonChangeStreamRestartTests {
+
+    private static final String DATABASE = "death_note_change_stream_restart";
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final String mongoUri = TestSupport.oplogMongoUri(DATABASE);
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void restartWithTheSameNodeId_shouldResumeFromTheSavedToken() {
+        try (MongoClient client = MongoClients.create(mongoUri)) {
+            ReactiveMongoTemplate mongoTemplate = new ReactiveMongoTemplate(client, DATABASE);
+
+            ConfigurableApplicationContext node = startNode("nodo-reinicio");
+            Person beforeStop = insertPending(mongoTemplate, "Misa Amane");
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> isArmed(node, beforeStop));
+            Awaitility.await().atMost(Duration.ofSeconds(10))
+                    .until(() -> mongoTemplate.findById("nodo-reinicio", SchedulerResumeToken.class).blockOptional(TIMEOUT).isPresent());
+            node.close();
+            String tokenBeforeRestart = mongoTemplate.findById("nodo-reinicio", SchedulerResumeToken.class).block(TIMEOUT).getData();
+
+            // Escrita con el nodo parado
+            Person whileDown = insertPending(mongoTemplate, "Rem");
+
+            ConfigurableApplicationContext restarted = startNode("nodo-reinicio");
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> isArmed(restarted, whileDown));
+            // Sin escrituras nuevas, el token solo avanza si el stream reanudado entregó la de Rem
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !tokenBeforeRestart.equals(
+                    mongoTemplate.findById("nodo-reinicio", SchedulerResumeToken.class).block(TIMEOUT).getData()));
+            Assertions.assertThat(mongoTemplate.count(new Query(), SchedulerResumeToken.class)
+                    .block(TIMEOUT)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void changeStreamWithoutNodeId_shouldFailToStart() {
+        Assertions.assertThatThrownBy(() -> startNode(""))
+                .hasRootCauseInstanceOf(IllegalStateException.class)
+                .rootCause().hasMessageContaining("deathnote.scheduler.cluster.node-id");
+    }
+
+    private ConfigurableApplicationContext startNode(String nodeId) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DeathNoteApplication.class)
+                .run(
+                        "--spring.data.mongodb.uri=" + mongoUri,
+                        "--server.port=0",
+                        "--spring.devtools.restart.enabled=false",
+                        "--deathnote.scheduler.change-stream.enabled=true",
+                        "--deathnote.scheduler.change-stream.token-save-interval=PT0.1S",
+                        "--deathnote.scheduler.cluster.node-id=" + nodeId);
+        nodes.add(context);
+        return context;
+    }
+
+    private static boolean isArmed(ConfigurableApplicationContext node, Person person) {
+        return node.getBean(DeathSchedulerService.class).isArmed(person.getId());
+    }
+
+    private static Person insertPending(ReactiveMongoTemplate mongoTemplate, String name) {
+        Person person = new Person(name, null, null, null, null);
+        person.setStatus(DeathSchedulerService.PENDING_HEART_ATTACK);
+        person.setScheduledDeathTime(LocalDateTime.now().plusMinutes(10).truncatedTo(ChronoUnit.MILLIS));
+        return mongoTemplate.insert(person).block(TIMEOUT);
+    }
+}
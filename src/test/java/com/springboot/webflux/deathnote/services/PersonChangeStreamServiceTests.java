@@ -0,0 +1,138 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.awaitility.Awaitility;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Modo change stream: las escrituras que no pasan por el scheduler de este nodo se arman o cancelan
+ * al llegar por el stream, y si el resume token ya no está en el oplog se reconstruye la partición.
+ * Un evento que falla al aplicarse no detiene el stream.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PersonChangeStreamServiceTests {
+
+    @Autowired
+    private PersonChangeStreamService changeStreamService;
+
+    @MockitoSpyBean
+    private DeathSchedulerService deathSchedulerService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private ChangeStreamFailures changeStreamFailures;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongoWithOplog(registry, "death_note_change_stream");
+        registry.add("deathnote.scheduler.change-stream.enabled", () -> "true");
+        registry.add("deathnote.scheduler.cluster.node-id", () -> "nodo-change-stream");
+        registry.add("deathnote.scheduler.change-stream.token-save-interval", () -> "PT0.1S");
+    }
+
+    @Test
+    void writesFromOtherNodes_shouldArmAndCancelThroughTheStream() {
+        // Insertada directamente en la BD, como si la hubiera escrito otro nodo
+        Person person = insertPending("Rem", LocalDateTime.now().plusMinutes(10));
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> deathSchedulerService.isArmed(person.getId()));
+
+        personRepository.deleteById(person.getId()).block(Duration.ofSeconds(5));
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> !deathSchedulerService.isArmed(person.getId()));
+    }
+
+    @Test
+    void lostResumeToken_shouldRebuildThePartitionAndKeepListening() {
+        changeStreamService.stop();
+
+        // Escrita mientras el stream estaba caído: no llegará como evento
+        Person duringGap = insertPending("Gelus", LocalDateTime.now().plusMinutes(10));
+        changeStreamFailures.historyLostOnNextWatch.set(true);
+
+        changeStreamService.start();
+
+        // El stream se reabre un poco antes de la caída, así que se comprueba también que hubo reconstrucción
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> deathSchedulerService.isArmed(duringGap.getId()));
+        Mockito.verify(deathSchedulerService).rebuildOwnedPartition();
+        Person afterRestart = insertPending("Sidoh", LocalDateTime.now().plusMinutes(10));
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> deathSchedulerService.isArmed(afterRestart.getId()));
+    }
+
+    @Test
+    void eventThatFailsToApply_shouldNotStopTheStream() {
+        Mockito.doThrow(new IllegalStateException("fallo al aplicar el evento"))
+                .doCallRealMethod()
+                .when(deathSchedulerService).onRemoteChange(ArgumentMatchers.argThat(person -> "Armonia Justin".equals(person.getName())));
+
+        Person failing = insertPending("Armonia Justin", LocalDateTime.now().plusMinutes(10));
+        Person next = insertPending("Ryuk", LocalDateTime.now().plusMinutes(10));
+
+        // El stream se reabre desde el último token guardado y vuelve a entregar el evento que falló
+        Awaitility.await().atMost(Duration.ofSeconds(15)).until(() -> deathSchedulerService.isArmed(next.getId()));
+        Awaitility.await().atMost(Duration.ofSeconds(15)).until(() -> deathSchedulerService.isArmed(failing.getId()));
+    }
+
+    private Person insertPending(String name, LocalDateTime scheduledDeathTime) {
+        Person person = new Person(name, null, null, null, null);
+        person.setStatus(DeathSchedulerService.PENDING_HEART_ATTACK);
+        person.setScheduledDeathTime(scheduledDeathTime.truncatedTo(ChronoUnit.MILLIS));
+        return personRepository.insert(List.of(person)).blockFirst(Duration.ofSeconds(5));
+    }
+
+    /**
+     * Envuelve el ReactiveMongoTemplate al crearlo, antes de que lo use ningún otro hilo, para poder
+     * simular que el resume token ya no está en el oplog (el servidor en memoria nunca lo pierde).
+     */
+    @TestConfiguration
+    static class ChangeStreamFailures implements BeanPostProcessor {
+
+        private final AtomicBoolean historyLostOnNextWatch = new AtomicBoolean();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof ReactiveMongoTemplate template)) {
+                return bean;
+            }
+            ReactiveMongoTemplate spy = Mockito.spy(template);
+            Mockito.doAnswer(invocation -> historyLostOnNextWatch.getAndSet(false)
+                            ? Flux.error(historyLost())
+                            : invocation.callRealMethod())
+                    .when(spy).changeStream(ArgumentMatchers.anyString(), ArgumentMatchers.any(ChangeStreamOptions.class), ArgumentMatchers.eq(Person.class));
+            return spy;
+        }
+
+        private static MongoCommandException historyLost() {
+            return new MongoCommandException(new BsonDocument("ok", new BsonDouble(0))
+                    .append("code", new BsonInt32(286))
+                    .append("errmsg", new BsonString("Resume of change stream was not possible, as the resume point may no longer be in the oplog.")),
+                    new ServerAddress());
+        }
+    }
+}
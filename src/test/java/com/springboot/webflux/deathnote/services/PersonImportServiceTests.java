@@ -0,0 +1,136 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Lotes de la importación masiva: los que cierra el timeout mientras otro lote sigue insertándose no
+ * se pierden, y si un lote falla a medias cada fila informa de lo que de verdad quedó guardado.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PersonImportServiceTests {
+
+    @Autowired
+    private PersonImportService personImportService;
+
+    @MockitoSpyBean
+    private PersonService personService;
+
+    @MockitoSpyBean
+    private DeathNoteService deathNoteService;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_import");
+        // Lotes que nunca se llenan: todos los cierra el timeout
+        registry.add("deathnote.bulk.batch-size", () -> "100");
+        registry.add("deathnote.bulk.concurrency", () -> "1");
+        registry.add("deathnote.bulk.batch-timeout", () -> "PT0.05S");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void timeoutFlushesWhileInsertsAreSlow_shouldWaitInsteadOfFailing() {
+        DeathNote deathNote = newDeathNote("lenta");
+        Mockito.doAnswer(invocation -> ((Flux<Person>) invocation.callRealMethod()).delaySubscription(Duration.ofMillis(300)))
+                .when(personService).saveInitialEntries(ArgumentMatchers.anyList());
+        // Cada línea llega después del timeout y mientras el lote anterior sigue insertándose
+        Flux<String> lines = Flux.range(1, 6)
+                .map(i -> "{\"name\": \"Lenta " + i + "\"}")
+                .delayElements(Duration.ofMillis(100));
+
+        List<PersonImportService.ImportResult> results = personImportService
+                .importPeople(deathNote.getId(), lines, PersonImportService.Format.NDJSON)
+                .collectList().block(Duration.ofSeconds(30));
+
+        Assertions.assertThat(results).hasSize(6).allMatch(result -> result.id() != null && result.error() == null);
+        Mockito.verify(personService, Mockito.atLeast(2)).saveInitialEntries(ArgumentMatchers.anyList());
+        Assertions.assertThat(reload(deathNote).getPersonCount()).isEqualTo(6);
+    }
+
+    @Test
+    void insertFailingHalfway_shouldReportOnlyTheRowsThatWereSaved() {
+        DeathNote deathNote = newDeathNote("a-medias");
+        // El índice único hace fallar la tercera inserción del lote; la inserción ordenada se detiene ahí
+        mongoTemplate.indexOps(Person.class).ensureIndex(new Index("name", Sort.Direction.ASC).unique().named("import_unique_name")).block(Duration.ofSeconds(5));
+        try {
+            List<PersonImportService.ImportResult> results = personImportService
+                    .importPeople(deathNote.getId(), Flux.just(
+                            "{\"name\": \"Repetida\"}",
+                            "{\"name\": \"Distinta\"}",
+                            "{\"name\": \"Repetida\"}",
+                            "{\"name\": \"Nunca insertada\"}"), PersonImportService.Format.NDJSON)
+                    .collectList().block(Duration.ofSeconds(10));
+
+            Assertions.assertThat(results).filteredOn(result -> result.id() != null)
+                    .extracting(PersonImportService.ImportResult::line).containsExactlyInAnyOrder(1L, 2L);
+            Assertions.assertThat(results).filteredOn(result -> result.id() != null).allMatch(result -> result.error() == null);
+            Assertions.assertThat(results).filteredOn(result -> result.id() == null)
+                    .extracting(PersonImportService.ImportResult::line).containsExactlyInAnyOrder(3L, 4L);
+            Assertions.assertThat(results).filteredOn(result -> result.id() == null)
+                    .allMatch(result -> result.error().startsWith("Error al guardar"));
+            for (PersonImportService.ImportResult saved : results.stream().filter(result -> result.id() != null).toList()) {
+                Assertions.assertThat(personRepository.existsById(saved.id()).block(Duration.ofSeconds(5))).isTrue();
+            }
+            Assertions.assertThat(reload(deathNote).getPersonCount()).isEqualTo(2);
+        } finally {
+            mongoTemplate.indexOps(Person.class).dropIndex("import_unique_name").block(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    void counterFailing_shouldKeepTheSavedRowsAndReportTheError() {
+        DeathNote deathNote = newDeathNote("sin-contador");
+        Mockito.doReturn(Mono.error(new IllegalStateException("contador no disponible")))
+                .when(deathNoteService).addPeopleToDeathNote(ArgumentMatchers.eq(deathNote.getId()), ArgumentMatchers.anyList());
+
+        List<PersonImportService.ImportResult> results = personImportService
+                .importPeople(deathNote.getId(), Flux.just("{\"name\": \"Sin contar 1\"}", "{\"name\": \"Sin contar 2\"}"),
+                        PersonImportService.Format.NDJSON)
+                .collectList().block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(results).hasSize(2)
+                .allMatch(result -> result.id() != null)
+                .allMatch(result -> result.error() != null && result.error().contains("contador no disponible"));
+        for (PersonImportService.ImportResult saved : results) {
+            Assertions.assertThat(personRepository.existsById(saved.id()).block(Duration.ofSeconds(5))).isTrue();
+        }
+    }
+
+    private DeathNote newDeathNote(String owner) {
+        return deathNoteRepository.save(new DeathNote(owner, null)).block(Duration.ofSeconds(5));
+    }
+
+    private DeathNote reload(DeathNote deathNote) {
+        return deathNoteRepository.findById(deathNote.getId()).block(Duration.ofSeconds(5));
+    }
+}
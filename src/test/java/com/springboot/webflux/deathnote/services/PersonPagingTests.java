@@ -0,0 +1,164 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PersonCursor;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Paginación por cursor (entryTime, _id) descendente: recorrer todas las páginas debe devolver cada
+ * persona una sola vez y en orden, también con empates de entryTime, sin entryTime y con filtros.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PersonPagingTests {
+
+    // Mismo orden que la consulta: entryTime descendente con los nulos al final, y _id descendente
+    private static final Comparator<Person> LIST_ORDER = Comparator
+            .comparing(Person::getEntryTime, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(Person::getId)
+            .reversed();
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_paging");
+    }
+
+    @Test
+    void equalEntryTimes_shouldBeBrokenByIdWithoutSkippingOrRepeating() {
+        String deathNoteId = newDeathNoteId();
+        LocalDateTime sameTime = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            people.add(person("Empate " + i, deathNoteId, sameTime, true, DeathSchedulerService.PENDING_HEART_ATTACK));
+        }
+        people.add(person("Más reciente", deathNoteId, sameTime.plusSeconds(1), true, DeathSchedulerService.PENDING_HEART_ATTACK));
+        people.add(person("Más antigua", deathNoteId, sameTime.minusSeconds(1), true, DeathSchedulerService.PENDING_HEART_ATTACK));
+        List<Person> saved = insert(people);
+
+        Assertions.assertThat(ids(walk(deathNoteId, null, null, 2))).containsExactlyElementsOf(ids(sorted(saved)));
+    }
+
+    @Test
+    void peopleWithoutEntryTime_shouldComeLastAndPageAmongThemselves() {
+        String deathNoteId = newDeathNoteId();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Person> saved = insert(List.of(
+                person("Con fecha 1", deathNoteId, now, true, null),
+                person("Con fecha 2", deathNoteId, now.minusMinutes(1), true, null),
+                person("Sin fecha 1", deathNoteId, null, true, null),
+                person("Sin fecha 2", deathNoteId, null, true, null),
+                person("Sin fecha 3", deathNoteId, null, true, null)));
+
+        List<Person> walked = walk(deathNoteId, null, null, 2);
+
+        Assertions.assertThat(ids(walked)).containsExactlyElementsOf(ids(sorted(saved)));
+        Assertions.assertThat(walked.subList(2, 5)).allMatch(person -> person.getEntryTime() == null);
+        // Un cursor sin entryTime se codifica y decodifica sin perderlo
+        PersonCursor cursor = PersonCursor.decode(PersonCursor.of(walked.get(2)).encode());
+        Assertions.assertThat(cursor.getEntryTime()).isNull();
+        Assertions.assertThat(cursor.getId()).isEqualTo(walked.get(2).getId());
+    }
+
+    @Test
+    void filters_shouldApplyOnEveryPage() {
+        String deathNoteId = newDeathNoteId();
+        String otherDeathNoteId = newDeathNoteId();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            boolean alive = i % 2 == 0;
+            String status = alive ? DeathSchedulerService.PENDING_HEART_ATTACK : DeathSchedulerService.DEAD_BY_SCHEDULER;
+            people.add(person("Filtro " + i, i < 8 ? deathNoteId : otherDeathNoteId, now.minusSeconds(i), alive, status));
+        }
+        List<Person> saved = insert(people);
+
+        Assertions.assertThat(ids(walk(deathNoteId, true, null, 2)))
+                .containsExactlyElementsOf(ids(sorted(saved.stream()
+                        .filter(person -> person.getDeathNoteId().equals(deathNoteId) && person.isAlive()).toList())));
+        Assertions.assertThat(ids(walk(deathNoteId, null, DeathSchedulerService.DEAD_BY_SCHEDULER, 3)))
+                .containsExactlyElementsOf(ids(sorted(saved.stream()
+                        .filter(person -> person.getDeathNoteId().equals(deathNoteId) && !person.isAlive()).toList())));
+        Assertions.assertThat(ids(walk(deathNoteId, false, DeathSchedulerService.PENDING_HEART_ATTACK, 2))).isEmpty();
+        Assertions.assertThat(walk(otherDeathNoteId, null, null, 1)).hasSize(2);
+    }
+
+    @Test
+    void malformedCursor_shouldListFromTheStart() {
+        String deathNoteId = newDeathNoteId();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        insert(List.of(
+                person("Primera", deathNoteId, now, true, null),
+                person("Segunda", deathNoteId, now.minusSeconds(1), true, null)));
+        List<String> firstPage = ids(personService.findPage(deathNoteId, null, null, null, 1).collectList().block(Duration.ofSeconds(5)));
+
+        for (String malformed : List.of("%%%no-es-base64", encode("sin separador"), encode("no-es-una-fecha|abc"), encode("2024-01-01T00:00|"))) {
+            Assertions.assertThatThrownBy(() -> PersonCursor.decode(malformed)).isInstanceOf(IllegalArgumentException.class);
+            Assertions.assertThat(ids(personService.findPage(deathNoteId, null, null, malformed, 1).collectList().block(Duration.ofSeconds(5))))
+                    .as("cursor %s", malformed)
+                    .isEqualTo(firstPage);
+        }
+    }
+
+    private List<Person> walk(String deathNoteId, Boolean alive, String status, int size) {
+        List<Person> walked = new ArrayList<>();
+        String after = null;
+        while (true) {
+            List<Person> page = personService.findPage(deathNoteId, alive, status, after, size).collectList().block(Duration.ofSeconds(5));
+            walked.addAll(page);
+            if (page.size() < size) {
+                return walked;
+            }
+            after = PersonCursor.of(page.get(page.size() - 1)).encode();
+        }
+    }
+
+    private List<Person> insert(List<Person> people) {
+        return personRepository.insert(people).collectList().block(Duration.ofSeconds(5));
+    }
+
+    private static Person person(String name, String deathNoteId, LocalDateTime entryTime, boolean alive, String status) {
+        Person person = new Person(name, null, null, null, deathNoteId);
+        person.setEntryTime(entryTime);
+        person.setAlive(alive);
+        person.setStatus(status);
+        return person;
+    }
+
+    private static List<Person> sorted(List<Person> people) {
+        return people.stream().sorted(LIST_ORDER).toList();
+    }
+
+    private static List<String> ids(List<Person> people) {
+        return people.stream().map(Person::getId).toList();
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String newDeathNoteId() {
+        return UUID.randomUUID().toString();
+    }
+}
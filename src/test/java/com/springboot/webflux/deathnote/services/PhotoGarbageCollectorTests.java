@@ -0,0 +1,157 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PhotoRef;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import com.springboot.webflux.deathnote.repository.PhotoRefRepository;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * La reconciliación debe borrar las fotos que nadie usa y conservar las referenciadas, también las
+ * que pasan a usarse entre la pasada y el borrado. Los borrados simultáneos no pierden liberaciones.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PhotoGarbageCollectorTests {
+
+    private static final Path uploadDir = TestSupport.tempDirectory("deathnote-gc");
+
+    @Autowired
+    private PhotoGarbageCollector photoGarbageCollector;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PhotoRefRepository photoRefRepository;
+
+    @Autowired
+    private PersonService personService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_photo_gc");
+        registry.add("deathnote.upload.path", () -> uploadDir.toString());
+        registry.add("deathnote.photos.gc.grace-period", () -> "PT0S");
+        registry.add("deathnote.photos.gc.deletes-per-second", () -> "1000");
+        registry.add("deathnote.photos.gc.initial-delay", () -> "PT1H");
+    }
+
+    @Test
+    void reconcile_shouldDeleteOnlyUnreferencedPhotos() throws IOException {
+        Path used = write("1111aaaa-usada.jpg", "usada");
+        Path orphan = write("2222bbbb-huerfana.jpg", "huérfana");
+        personRepository.save(new Person("Con foto", null, null, used.getFileName().toString(), null)).block(Duration.ofSeconds(5));
+
+        Long reclaimed = photoGarbageCollector.reconcile().block(Duration.ofSeconds(30));
+
+        Assertions.assertThat(used).exists();
+        Assertions.assertThat(orphan).doesNotExist();
+        Assertions.assertThat(reclaimed).isEqualTo("huérfana".getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void deleteIfOrphaned_shouldKeepAPhotoThatAPersonUsesByTheTimeItIsClaimed() throws IOException {
+        // La pasada la vio sin personas, pero se guardó una antes de reclamarla, y su referencia se perdió
+        String key = "a".repeat(64) + ".jpg";
+        Path photo = writeStored(key, "usada tras la pasada");
+        personRepository.save(new Person("Llegó tarde", null, null, key, null)).block(Duration.ofSeconds(5));
+
+        Long reclaimed = photoService.deleteIfOrphaned(key, Duration.ZERO).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(reclaimed).isZero();
+        Assertions.assertThat(photo).exists();
+        PhotoRef ref = photoRefRepository.findById(key).block(Duration.ofSeconds(5));
+        Assertions.assertThat(ref.getDeletingSince()).as("la reclamación se suelta").isNull();
+        Assertions.assertThat(ref.getRefs()).as("el contador se corrige con las personas que la usan").isEqualTo(1);
+    }
+
+    @Test
+    void deleteIfOrphaned_shouldNotClaimAPhotoReferencedWithinTheGracePeriod() throws IOException {
+        String key = "b".repeat(64) + ".jpg";
+        Path photo = writeStored(key, "recién subida");
+        // El fichero es antiguo, pero una subida le acaba de sumar una referencia y su persona aún no se ha guardado
+        Files.setLastModifiedTime(photo, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        photoRefRepository.addReferences(key, 1).block(Duration.ofSeconds(5));
+
+        Long reclaimed = photoService.deleteIfOrphaned(key, Duration.ofHours(1)).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(reclaimed).isZero();
+        Assertions.assertThat(photo).exists();
+        Assertions.assertThat(photoRefRepository.findById(key).block(Duration.ofSeconds(5)).getDeletingSince()).isNull();
+    }
+
+    @Test
+    void deleteIfOrphaned_shouldCollectAPhotoWhoseReleaseWasLost() throws IOException {
+        String key = "c".repeat(64) + ".jpg";
+        Path photo = writeStored(key, "liberación perdida");
+        PhotoRef leaked = new PhotoRef();
+        leaked.setId(key);
+        leaked.setRefs(2);
+        leaked.setTouchedAt(Instant.now().minus(Duration.ofHours(2)));
+        photoRefRepository.save(leaked).block(Duration.ofSeconds(5));
+
+        Long reclaimed = photoService.deleteIfOrphaned(key, Duration.ofHours(1)).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(reclaimed).isEqualTo("liberación perdida".getBytes(StandardCharsets.UTF_8).length);
+        Assertions.assertThat(photo).doesNotExist();
+        Assertions.assertThat(photoRefRepository.findById(key).block(Duration.ofSeconds(5))).isNull();
+    }
+
+    @Test
+    void concurrentDeletes_shouldReleaseEveryReference() throws IOException {
+        int people = 200;
+        String key = "d".repeat(64) + ".jpg";
+        Path photo = writeStored(key, "compartida");
+        photoRefRepository.addReferences(key, people).block(Duration.ofSeconds(5));
+        List<Person> sharing = personRepository.insert(IntStream.range(0, people)
+                        .mapToObj(i -> new Person("Compartida " + i, null, null, key, null))
+                        .toList())
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        Flux.fromIterable(sharing)
+                .parallel(16)
+                .runOn(Schedulers.parallel())
+                .flatMap(personService::delete)
+                .sequential()
+                .blockLast(Duration.ofSeconds(30));
+
+        // Sin liberaciones perdidas el contador llega a cero y la foto se borra sin esperar a la reconciliación
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> Files.notExists(photo)
+                && photoRefRepository.findById(key).blockOptional(Duration.ofSeconds(5)).isEmpty());
+    }
+
+    private static Path writeStored(String key, String content) throws IOException {
+        Path photo = uploadDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+        Files.createDirectories(photo.getParent());
+        Path written = Files.write(photo, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(written, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        return written;
+    }
+
+    private static Path write(String name, String content) throws IOException {
+        return Files.write(uploadDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
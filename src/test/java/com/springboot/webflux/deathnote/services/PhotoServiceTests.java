@@ -0,0 +1,197 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.model.PhotoRef;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import com.springboot.webflux.deathnote.repository.PhotoRefRepository;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * El almacén por contenido no debe duplicar fotos iguales, borrar una foto que aún se usa ni
+ * aceptar uploads que no sean imágenes o superen el tamaño máximo.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PhotoServiceTests {
+
+    private static final Path uploadDir = TestSupport.tempDirectory("deathnote-store");
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PhotoRefRepository photoRefRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_photo_store");
+        registry.add("deathnote.upload.path", () -> uploadDir.toString());
+        registry.add("deathnote.photos.max-size", () -> "1KB");
+    }
+
+    @Test
+    void storeSameContentTwice_shouldKeepOneFileUntilLastRelease() {
+        byte[] content = TestSupport.png("misma cara subida dos veces");
+
+        String first = photoService.store(filePart("cara.jpeg", content)).block(Duration.ofSeconds(10));
+        String second = photoService.store(filePart("otra-cara", content)).block(Duration.ofSeconds(10));
+
+        Assertions.assertThat(first).isEqualTo(second).matches("[0-9a-f]{64}\\.png");
+        Path stored = storedPath(first);
+        Assertions.assertThat(stored).hasBinaryContent(content);
+        Assertions.assertThat(photoRefRepository.findById(first).block(Duration.ofSeconds(5)).getRefs()).isEqualTo(2);
+
+        photoService.release(first).block(Duration.ofSeconds(10));
+        Assertions.assertThat(stored).exists();
+
+        photoService.release(first).block(Duration.ofSeconds(10));
+        Assertions.assertThat(stored).doesNotExist();
+        Assertions.assertThat(photoRefRepository.findById(first).block(Duration.ofSeconds(5))).isNull();
+    }
+
+    @Test
+    void storeWhileAnotherNodeDeletesTheSamePhoto_shouldWaitAndRecreateIt() throws IOException {
+        byte[] content = TestSupport.png("borrada por otro nodo");
+        String key = photoService.store(filePart("cara.png", content)).block(Duration.ofSeconds(10));
+        Path stored = storedPath(key);
+        // Otro nodo suelta la última referencia y reclama la foto, pero aún no ha borrado los ficheros
+        photoRefRepository.removeReference(key).block(Duration.ofSeconds(5));
+        Assertions.assertThat(photoRefRepository.claimUnreferenced(key).block(Duration.ofSeconds(5))).isTrue();
+
+        CompletableFuture<String> upload = photoService.store(filePart("otra.png", content)).toFuture();
+
+        Assertions.assertThat(photoRefRepository.claimUnreferenced(key).block(Duration.ofSeconds(5)))
+                .as("la reclamación es de un solo nodo").isFalse();
+        Awaitility.await().during(Duration.ofMillis(500)).atMost(Duration.ofSeconds(2))
+                .alias("la subida espera a que termine el borrado")
+                .until(() -> !upload.isDone());
+        Assertions.assertThat(photoRefRepository.findById(key).block(Duration.ofSeconds(5)).getRefs()).isZero();
+
+        // El otro nodo termina: borra el fichero y el contador
+        Files.delete(stored);
+        photoRefRepository.removeClaimed(key).block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(upload).succeedsWithin(Duration.ofSeconds(10)).isEqualTo(key);
+        Assertions.assertThat(stored).hasBinaryContent(content);
+        PhotoRef ref = photoRefRepository.findById(key).block(Duration.ofSeconds(5));
+        Assertions.assertThat(ref.getRefs()).isEqualTo(1);
+        Assertions.assertThat(ref.getDeletingSince()).isNull();
+    }
+
+    @Test
+    void concurrentStoresAndReleases_shouldNeverDeleteAPhotoInUse() {
+        byte[] content = TestSupport.png("subidas y bajas a la vez");
+        String key = photoService.store(filePart("base.png", content)).block(Duration.ofSeconds(10));
+
+        Flux.range(0, 20)
+                .flatMap(i -> photoService.store(filePart("cara-" + i + ".png", content))
+                        .flatMap(stored -> photoService.release(stored)), 8)
+                .blockLast(Duration.ofSeconds(30));
+
+        Assertions.assertThat(storedPath(key)).hasBinaryContent(content);
+        Assertions.assertThat(photoRefRepository.findById(key).block(Duration.ofSeconds(5)).getRefs()).isEqualTo(1);
+
+        photoService.release(key).block(Duration.ofSeconds(10));
+        Assertions.assertThat(storedPath(key)).doesNotExist();
+        Assertions.assertThat(photoRefRepository.findById(key).block(Duration.ofSeconds(5))).isNull();
+    }
+
+    @Test
+    void store_shouldRejectContentThatIsNotAnImage() {
+        byte[] script = "<script>alert('kira')</script>".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertThatThrownBy(() -> photoService.store(filePart("cara.png", script)).block(Duration.ofSeconds(10)))
+                .isInstanceOf(InvalidPhotoException.class);
+    }
+
+    @Test
+    void store_shouldAbortUploadsOverTheSizeLimit() throws IOException {
+        byte[] large = TestSupport.png("x".repeat(2_000));
+
+        Assertions.assertThatThrownBy(() -> photoService.store(filePart("grande.png", large)).block(Duration.ofSeconds(10)))
+                .isInstanceOf(InvalidPhotoException.class)
+                .hasMessageContaining("tamaño máximo");
+        try (var temps = Files.list(uploadDir.resolve(".tmp"))) {
+            Assertions.assertThat(temps).isEmpty();
+        }
+    }
+
+    @Test
+    void migrateFlatLayout_shouldMoveReferencedPhotosIntoTheStore() throws IOException {
+        String legacyName = "2b7c1d9e-0000-4000-8000-000000000000-ryuk.jpg";
+        Files.write(uploadDir.resolve(legacyName), "foto antigua".getBytes(StandardCharsets.UTF_8));
+        Person person = new Person("Legacy", null, null, legacyName, null);
+        personRepository.save(person).block(Duration.ofSeconds(5));
+
+        Long migrated = photoService.migrateFlatLayout().block(Duration.ofSeconds(10));
+
+        Person updated = personRepository.findById(person.getId()).block(Duration.ofSeconds(5));
+        Assertions.assertThat(migrated).isEqualTo(1);
+        Assertions.assertThat(updated.getFacePhoto()).matches("[0-9a-f]{64}\\.jpg");
+        Assertions.assertThat(uploadDir.resolve(legacyName)).doesNotExist();
+        Assertions.assertThat(photoService.resolve(updated.getFacePhoto(), null).block(Duration.ofSeconds(5))).exists();
+        Assertions.assertThat(photoRefRepository.findById(updated.getFacePhoto()).block(Duration.ofSeconds(5)).getRefs()).isEqualTo(1);
+    }
+
+    private static Path storedPath(String key) {
+        return uploadDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    /**
+     * FilePart que entrega el contenido en dos buffers, como llegaría por la red.
+     */
+    private static FilePart filePart(String filename, byte[] content) {
+        int half = content.length / 2;
+        Flux<DataBuffer> buffers = Flux.just(Arrays.copyOfRange(content, 0, half), Arrays.copyOfRange(content, half, content.length))
+                .map(DefaultDataBufferFactory.sharedInstance::wrap);
+        return new FilePart() {
+            @Override
+            public String filename() {
+                return filename;
+            }
+
+            @Override
+            public Mono<Void> transferTo(Path dest) {
+                return Mono.error(new UnsupportedOperationException());
+            }
+
+            @Override
+            public String name() {
+                return "file";
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.EMPTY;
+            }
+
+            @Override
+            public Flux<DataBuffer> content() {
+                return buffers;
+            }
+        };
+    }
+}
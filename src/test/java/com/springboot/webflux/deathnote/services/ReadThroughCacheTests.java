@@ -0,0 +1,126 @@
+package com.springboot.webflux.deathnote.services;
+
+import com.springboot.webflux.deathnote.TestSupport;
+import com.springboot.webflux.deathnote.model.CacheInvalidation;
+import com.springboot.webflux.deathnote.model.DeathNote;
+import com.springboot.webflux.deathnote.model.Person;
+import com.springboot.webflux.deathnote.repository.DeathNoteRepository;
+import com.springboot.webflux.deathnote.repository.PersonRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Las lecturas repetidas se sirven de la caché y cualquier escritura de la aplicación la invalida.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class ReadThroughCacheTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private DeathNoteService deathNoteService;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private DeathNoteRepository deathNoteRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private CacheInvalidationBus invalidationBus;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        TestSupport.registerMongo(registry, "death_note_cache");
+    }
+
+    @Test
+    void findById_shouldServeFromCacheUntilPersonIsSaved() {
+        Person person = personRepository.save(new Person("Light", null, null, null, null)).block(TIMEOUT);
+
+        Person first = personService.findById(person.getId()).block(TIMEOUT);
+        // Un cambio que no pasa por la aplicación no se ve mientras dure la entrada
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(person.getId())),
+                Update.update("name", "Fuera de banda"), Person.class).block(TIMEOUT);
+        Person second = personService.findById(person.getId()).block(TIMEOUT);
+        Assertions.assertThat(second.getName()).isEqualTo("Light");
+        Assertions.assertThat(second).as("cada lectura recibe su copia").isNotSameAs(first);
+
+        second.setName("Kira");
+        personService.save(second).block(TIMEOUT);
+
+        Person afterSave = personService.findById(person.getId()).block(TIMEOUT);
+        Assertions.assertThat(afterSave.getName()).isEqualTo("Kira");
+
+        personRepository.deleteById(person.getId()).block(TIMEOUT);
+        Assertions.assertThat(personService.findById(person.getId()).blockOptional(TIMEOUT)).isEmpty();
+    }
+
+    @Test
+    void failedUpdate_shouldNotLeakIntoCachedReads() {
+        Person person = personRepository.save(new Person("Near", null, null, null, null)).block(TIMEOUT);
+        personService.findById(person.getId()).block(TIMEOUT);
+
+        // Como la actualización del controlador: modifica la persona leída y el guardado falla
+        Mono<Person> update = personService.findById(person.getId())
+                .flatMap(existing -> {
+                    existing.setName("Mello");
+                    existing.setDeathNoteId("otra-death-note");
+                    return Mono.error(new IllegalStateException("fallo al guardar"));
+                });
+        Assertions.assertThatThrownBy(() -> update.block(TIMEOUT)).hasMessageContaining("fallo al guardar");
+
+        Person reread = personService.findById(person.getId()).block(TIMEOUT);
+        Assertions.assertThat(reread.getName()).isEqualTo("Near");
+        Assertions.assertThat(reread.getDeathNoteId()).isNull();
+    }
+
+    @Test
+    void findAll_shouldReflectPersonCountAfterWriting() {
+        DeathNote deathNote = deathNoteRepository.save(new DeathNote("ryuk", null)).block(TIMEOUT);
+        List<DeathNote> before = deathNoteService.findAll().collectList().block(TIMEOUT);
+        Assertions.assertThat(before).extracting(DeathNote::getPersonCount).containsOnly(0L);
+
+        // Solo se cuentan personas que existen
+        Person person = personRepository.save(new Person("Ryuk", null, null, null, null)).block(TIMEOUT);
+        deathNoteService.writePersonInDeathNote(deathNote.getId(), person.getId(), null, null, null).block(TIMEOUT);
+
+        List<DeathNote> after = deathNoteService.findAll().collectList().block(TIMEOUT);
+        Assertions.assertThat(after)
+                .filteredOn(dn -> dn.getId().equals(deathNote.getId()))
+                .extracting(DeathNote::getPersonCount)
+                .containsExactly(1L);
+    }
+
+    @Test
+    void invalidationFromAnotherNode_shouldEvictPerson() {
+        Person person = personRepository.save(new Person("Misa", null, null, null, null)).block(TIMEOUT);
+        personService.findById(person.getId()).block(TIMEOUT);
+        // Escrita por el otro nodo, que publica la invalidación
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(person.getId())),
+                Update.update("name", "Misa Amane"), Person.class).block(TIMEOUT);
+
+        invalidationBus.apply(new CacheInvalidation("otro-nodo", "people", List.of(person.getId()), new Date()));
+
+        Assertions.assertThat(personService.findById(person.getId()).block(TIMEOUT).getName()).isEqualTo("Misa Amane");
+    }
+}
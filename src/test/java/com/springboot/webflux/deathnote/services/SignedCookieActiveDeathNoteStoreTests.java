@@ -0,0 +1,70 @@
+package com.springboot.webflux.deathnote.services;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.time.Duration;
+
+/**
+ * La cookie firmada debe devolver la Death Note elegida y rechazar las manipuladas o caducadas.
+ */
+class SignedCookieActiveDeathNoteStoreTests {
+
+    private static final String SECRET = "secreto-de-prueba-de-32-bytes-o-mas";
+
+    private final SignedCookieActiveDeathNoteStore store =
+            new SignedCookieActiveDeathNoteStore(SECRET, Duration.ofHours(1), false);
+
+    @Test
+    void get_shouldReturnTheSelectedDeathNote() {
+        String value = select(store, "6650f0c2a1b2c3d4e5f60718");
+
+        Assertions.assertThat(read(store, value)).isEqualTo("6650f0c2a1b2c3d4e5f60718");
+    }
+
+    @Test
+    void get_shouldRejectTamperedOrForeignCookies() {
+        String value = select(store, "6650f0c2a1b2c3d4e5f60718");
+        String tampered = "6650f0c2a1b2c3d4e5f60719" + value.substring(value.indexOf('.'));
+        SignedCookieActiveDeathNoteStore otherSecret =
+                new SignedCookieActiveDeathNoteStore("otro-secreto-de-prueba-de-32-bytes-o-mas", Duration.ofHours(1), false);
+
+        Assertions.assertThat(read(store, tampered)).isNull();
+        Assertions.assertThat(read(otherSecret, value)).isNull();
+        Assertions.assertThat(read(store, "basura")).isNull();
+    }
+
+    @Test
+    void get_shouldRejectExpiredCookies() {
+        SignedCookieActiveDeathNoteStore expired =
+                new SignedCookieActiveDeathNoteStore(SECRET, Duration.ofSeconds(-1), false);
+
+        Assertions.assertThat(read(store, select(expired, "6650f0c2a1b2c3d4e5f60718"))).isNull();
+    }
+
+    @Test
+    void constructor_shouldRejectMissingOrShortSecrets() {
+        for (String secret : new String[] {null, "", "   ", "x".repeat(SignedCookieActiveDeathNoteStore.MIN_SECRET_BYTES - 1)}) {
+            Assertions.assertThatThrownBy(() -> new SignedCookieActiveDeathNoteStore(secret, Duration.ofHours(1), false))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("deathnote.session.cookie.secret");
+        }
+    }
+
+    private static String select(SignedCookieActiveDeathNoteStore store, String deathNoteId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/processDeathNoteSelection"));
+        store.set(exchange, deathNoteId).block();
+        ResponseCookie cookie = exchange.getResponse().getCookies().getFirst(SignedCookieActiveDeathNoteStore.COOKIE_NAME);
+        return cookie.getValue();
+    }
+
+    private static String read(SignedCookieActiveDeathNoteStore store, String value) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/rules")
+                .cookie(new HttpCookie(SignedCookieActiveDeathNoteStore.COOKIE_NAME, value)));
+        return store.get(exchange).block();
+    }
+}